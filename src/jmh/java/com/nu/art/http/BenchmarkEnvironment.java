@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import com.nu.art.belog.consts.LogLevel;
+import com.nu.art.http.HttpModule.BaseTransaction;
+import com.nu.art.modular.core.ModuleManager;
+import com.nu.art.modular.core.ModuleManagerBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+
+/**
+ * Shared fixtures of the benchmarks: the module, and an in-process HTTP server on a loopback port.
+ */
+final class BenchmarkEnvironment {
+
+	static final class BenchmarkTransaction
+		extends BaseTransaction {
+
+		@Override
+		protected IHttpRequest createRequest() {
+			return super.createRequest();
+		}
+	}
+
+	private static HttpModule module;
+
+	private static HttpServer server;
+
+	static synchronized HttpModule getModule() {
+		if (module != null)
+			return module;
+
+		new ModuleManagerBuilder().addModules(HttpModule.class).build();
+		module = ModuleManager.ModuleManager.getModule(HttpModule.class);
+		module.setDefaultLogLevel(LogLevel.Error);
+		return module;
+	}
+
+	static synchronized String getServerUrl()
+		throws IOException {
+		if (server == null) {
+			server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 512);
+			server.createContext("/small", new FixedBodyHandler("ok".getBytes()));
+			server.createContext("/json", new FixedBodyHandler(createJsonArray(200).getBytes("utf-8")));
+			server.createContext("/download", new DownloadHandler());
+			server.createContext("/upload", new UploadHandler());
+			server.setExecutor(Executors.newFixedThreadPool(64));
+			server.start();
+		}
+
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	static String createJsonArray(int items) {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < items; i++) {
+			if (i > 0)
+				json.append(',');
+
+			json.append("{\"id\":").append(i).append(",\"name\":\"item-").append(i).append("\",\"price\":").append(i * 1.5).append(",\"tags\":[\"a\",\"b\",\"c\"]}");
+		}
+
+		return json.append(']').toString();
+	}
+
+	private static final class FixedBodyHandler
+		implements HttpHandler {
+
+		private final byte[] body;
+
+		private FixedBodyHandler(byte[] body) {
+			this.body = body;
+		}
+
+		@Override
+		public void handle(HttpExchange exchange)
+			throws IOException {
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			OutputStream outputStream = exchange.getResponseBody();
+			outputStream.write(body);
+			outputStream.close();
+		}
+	}
+
+	private static final class DownloadHandler
+		implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange)
+			throws IOException {
+			String query = exchange.getRequestURI().getQuery();
+			long size = Long.parseLong(query.substring(query.indexOf('=') + 1));
+			byte[] chunk = new byte[64 * 1024];
+
+			exchange.sendResponseHeaders(200, size);
+			OutputStream outputStream = exchange.getResponseBody();
+			for (long written = 0; written < size; written += chunk.length) {
+				outputStream.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+			}
+			outputStream.close();
+		}
+	}
+
+	private static final class UploadHandler
+		implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange)
+			throws IOException {
+			InputStream inputStream = exchange.getRequestBody();
+			byte[] buffer = new byte[64 * 1024];
+			while (inputStream.read(buffer) != -1) {}
+
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+		}
+	}
+}
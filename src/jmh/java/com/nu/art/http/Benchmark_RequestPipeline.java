@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import com.nu.art.http.BenchmarkEnvironment.BenchmarkTransaction;
+import com.nu.art.http.Transaction_JSON.JsonHttpResponseListener;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-request CPU work of the pipeline, isolated from the network by an in-memory {@link HttpTransport}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class Benchmark_RequestPipeline {
+
+	public static class Item {
+
+		public int id;
+
+		public String name;
+
+		public double price;
+
+		public String[] tags;
+	}
+
+	@Param( {
+		        "0",
+		        "10"
+	        })
+	public int parameterCount;
+
+	@Param( {
+		        "5",
+		        "30"
+	        })
+	public int responseHeaderCount;
+
+	private BenchmarkTransaction transaction;
+
+	private InMemoryTransport transport;
+
+	private byte[] jsonBody;
+
+	@Setup
+	public void setup() {
+		BenchmarkEnvironment.getModule();
+		transaction = new BenchmarkTransaction();
+		jsonBody = BenchmarkEnvironment.createJsonArray(200).getBytes();
+
+		HashMap<String, List<String>> headers = new HashMap<>();
+		headers.put(null, single("HTTP/1.1 200 OK"));
+		headers.put("Content-Length", single("2"));
+		for (int i = headers.size(); i < responseHeaderCount; i++) {
+			headers.put("X-Header-" + i, single("value-" + i));
+		}
+
+		transport = new InMemoryTransport(headers, "ok".getBytes());
+	}
+
+	@Benchmark
+	public String composeURL()
+		throws IOException {
+		HttpRequest request = createRequest();
+		return request.composeURL();
+	}
+
+	@Benchmark
+	public void executeInMemory(Blackhole blackhole)
+		throws Throwable {
+		InputStream inputStream = createRequest().setTransport(transport).executeSync();
+		blackhole.consume(inputStream.read());
+	}
+
+	@Benchmark
+	public String convertToString()
+		throws IOException {
+		return new StringListener().convertToType(String.class, createResponse());
+	}
+
+	@Benchmark
+	public Item[] convertToJson()
+		throws IOException {
+		return new ItemsListener().convertToType(Item[].class, createResponse());
+	}
+
+	@Benchmark
+	public Item[] convertToJsonStreaming()
+		throws IOException {
+		ItemsListener listener = new ItemsListener();
+		listener.setStreaming(true);
+		return listener.convertToType(Item[].class, createResponse());
+	}
+
+	private HttpRequest createRequest() {
+		IHttpRequest request = transaction.createRequest().setUrl("http://127.0.0.1/benchmark/path");
+		for (int i = 0; i < parameterCount; i++) {
+			request.addParameter("param" + i, "value with spaces & symbols " + i);
+		}
+
+		return (HttpRequest) request;
+	}
+
+	private HttpResponse createResponse() {
+		HttpResponse response = new HttpResponse();
+		response.responseCode = 200;
+		response.headers.add("content-length", String.valueOf(jsonBody.length));
+		response.inputStream = new ByteArrayInputStream(jsonBody);
+		return response;
+	}
+
+	private static List<String> single(String value) {
+		ArrayList<String> values = new ArrayList<>();
+		values.add(value);
+		return values;
+	}
+
+	private static class StringListener
+		extends HttpResponseListener<String, String> {
+
+		StringListener() {
+			super(String.class, String.class);
+		}
+
+		@Override
+		public void onSuccess(HttpResponse httpResponse, String responseBody) {}
+
+		@Override
+		public void onError(HttpResponse httpResponse, String errorBody) {}
+	}
+
+	private static class ItemsListener
+		extends JsonHttpResponseListener<Item[]> {
+
+		ItemsListener() {
+			super(Item[].class);
+		}
+
+		@Override
+		public void onSuccess(HttpResponse httpResponse, Item[] responseBody) {}
+	}
+
+	private static final class InMemoryTransport
+		implements HttpTransport {
+
+		private final Map<String, List<String>> headers;
+
+		private final byte[] body;
+
+		InMemoryTransport(Map<String, List<String>> headers, byte[] body) {
+			this.headers = headers;
+			this.body = body;
+		}
+
+		@Override
+		public HttpConnection connect(HttpRequest request, URL url, HttpHeaders requestHeaders, RequestBody requestBody) {
+			return new HttpConnection() {
+				@Override
+				public OutputStream getOutputStream() {
+					return new OutputStream() {
+						@Override
+						public void write(int b) {}
+					};
+				}
+
+				@Override
+				public int getResponseCode() {
+					return 200;
+				}
+
+				@Override
+				public Map<String, List<String>> getHeaderFields() {
+					return headers;
+				}
+
+				@Override
+				public InputStream getInputStream() {
+					return new ByteArrayInputStream(body);
+				}
+
+				@Override
+				public InputStream getErrorStream() {
+					return null;
+				}
+
+				@Override
+				public void release() {}
+
+				@Override
+				public void disconnect() {}
+			};
+		}
+	}
+}
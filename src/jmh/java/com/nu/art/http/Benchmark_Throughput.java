@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import com.nu.art.http.BenchmarkEnvironment.BenchmarkTransaction;
+import com.nu.art.http.HttpModule.ExecutionPool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end request throughput against the in-process server, per execution pool size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+public class Benchmark_Throughput {
+
+	private static final int Batch = 200;
+
+	@Param( {
+		        "1",
+		        "5",
+		        "20",
+		        "50"
+	        })
+	public int poolSize;
+
+	@Param( {
+		        "false",
+		        "true"
+	        })
+	public boolean virtualThreads;
+
+	private HttpModule module;
+
+	private BenchmarkTransaction transaction;
+
+	private ExecutionPool pool;
+
+	private String url;
+
+	@Setup
+	public void setup()
+		throws IOException {
+		module = BenchmarkEnvironment.getModule();
+		transaction = new BenchmarkTransaction();
+		pool = new ExecutionPool("benchmark-" + poolSize + "-" + virtualThreads, poolSize).setVirtualThreads(virtualThreads);
+		url = BenchmarkEnvironment.getServerUrl() + "/small";
+	}
+
+	@TearDown
+	public void tearDown() {
+		module.disposeExecutionQueue(pool);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Batch)
+	public void requests()
+		throws Exception {
+		CompletableFuture<?>[] futures = new CompletableFuture[Batch];
+		for (int i = 0; i < Batch; i++) {
+			futures[i] = transaction.createRequest().setUrl(url).setExecutionPool(pool).executeAsync(String.class);
+		}
+
+		CompletableFuture.allOf(futures).get();
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import com.nu.art.http.BenchmarkEnvironment.BenchmarkTransaction;
+import com.nu.art.http.MultipartBody.Multipart;
+import com.nu.art.http.consts.HttpMethod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures uploads and downloads of large bodies against the in-process server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class Benchmark_Transfer {
+
+	@Param( {
+		        "65536",
+		        "8388608"
+	        })
+	public int size;
+
+	private BenchmarkTransaction transaction;
+
+	private String serverUrl;
+
+	private byte[] uploadBody;
+
+	private File targetFile;
+
+	@Setup
+	public void setup()
+		throws IOException {
+		BenchmarkEnvironment.getModule();
+		transaction = new BenchmarkTransaction();
+		serverUrl = BenchmarkEnvironment.getServerUrl();
+		uploadBody = new byte[size];
+		targetFile = File.createTempFile("benchmark", ".download");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		targetFile.delete();
+	}
+
+	@Benchmark
+	public void multipartUpload()
+		throws Throwable {
+		IHttpRequest request = transaction.createRequest().setUrl(serverUrl + "/upload").setMethod(HttpMethod.Post);
+		new MultipartBody().setMultipart(request, new Multipart("file", true, () -> (InputStream) new ByteArrayInputStream(uploadBody), uploadBody.length));
+		request.executeSync().close();
+	}
+
+	@Benchmark
+	public void fileDownload()
+		throws Exception {
+		final CompletableFuture<Void> completed = new CompletableFuture<>();
+		transaction.createRequest().setUrl(serverUrl + "/download?size=" + size).execute(new FileResponseListener<String>(targetFile, String.class) {
+			@Override
+			protected void onDownloadCompleted() {
+				completed.complete(null);
+			}
+
+			@Override
+			public void onError(HttpResponse httpResponse, String errorBody) {
+				completed.completeExceptionally(httpResponse.exception);
+			}
+		});
+
+		completed.get();
+	}
+}
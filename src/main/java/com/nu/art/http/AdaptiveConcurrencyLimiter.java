@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of in flight requests per destination host, and adapts the limit to how the host is doing.
+ *
+ * The limit follows the gradient between the lowest recent server response time of the host and the latest one: while responses are about as fast
+ * as the host can serve them the limit grows, as requests start queuing at the host the limit shrinks. Server errors, throttling responses and I/O
+ * failures cut the limit multiplicatively.
+ *
+ * A request beyond the limit waits up to {@link #setMaxWait(long)} for a permit, and is then rejected with a {@link ConcurrencyLimitExceededException}
+ * rather than occupying an executor while the host is struggling.
+ */
+@SuppressWarnings( {
+	                   "unused",
+	                   "WeakerAccess"
+                   })
+public final class AdaptiveConcurrencyLimiter {
+
+	public static final class HostStatistics {
+
+		public final String host;
+
+		public final int limit;
+
+		public final int inFlight;
+
+		/**
+		 * The lowest recent server response time of the host, in nanoseconds
+		 */
+		public final long baselineLatency;
+
+		public final long rejected;
+
+		private HostStatistics(HostLimit hostLimit) {
+			host = hostLimit.host;
+			limit = (int) hostLimit.limit;
+			inFlight = hostLimit.inFlight;
+			baselineLatency = hostLimit.baselineLatency;
+			rejected = hostLimit.rejected;
+		}
+
+		@Override
+		public String toString() {
+			return host + ": limit=" + limit + ", in-flight=" + inFlight + ", baseline=" + TimeUnit.NANOSECONDS.toMillis(baselineLatency) + "ms, rejected=" + rejected;
+		}
+	}
+
+	/**
+	 * A slot held by a transaction while it is waiting for, and reading, the response of the host.
+	 */
+	final class Permit {
+
+		private final HostLimit hostLimit;
+
+		private boolean released;
+
+		private Permit(HostLimit hostLimit) {
+			this.hostLimit = hostLimit;
+		}
+
+		/**
+		 * @param latency The time the server took to respond, in nanoseconds
+		 * @param dropped Whether the host failed to serve the request, i.e. an I/O error or a server error or throttling response
+		 */
+		final void release(long latency, boolean dropped) {
+			synchronized (hostLimit) {
+				if (released)
+					return;
+
+				released = true;
+				hostLimit.onSample(latency, dropped);
+				hostLimit.inFlight--;
+				hostLimit.notifyAll();
+			}
+		}
+
+		/**
+		 * Releases the permit without affecting the limit, when the outcome says nothing about the host.
+		 */
+		final void ignore() {
+			synchronized (hostLimit) {
+				if (released)
+					return;
+
+				released = true;
+				hostLimit.inFlight--;
+				hostLimit.notifyAll();
+			}
+		}
+	}
+
+	private final class HostLimit {
+
+		final String host;
+
+		double limit = initialLimit;
+
+		long baselineLatency;
+
+		long previousWindowMin = Long.MAX_VALUE;
+
+		long windowMin = Long.MAX_VALUE;
+
+		long windowStart;
+
+		int inFlight;
+
+		long rejected;
+
+		HostLimit(String host) {
+			this.host = host;
+		}
+
+		/**
+		 * Must be called while holding the lock of this host.
+		 */
+		void onSample(long latency, boolean dropped) {
+			if (dropped) {
+				limit = Math.max(minLimit, limit * backoffRatio);
+				return;
+			}
+
+			if (latency <= 0)
+				return;
+
+			// the baseline is the minimum over the last one to two windows, so it can recover when the host gets permanently slower
+			long now = System.nanoTime();
+			if (now - windowStart > BaselineWindow) {
+				previousWindowMin = windowMin;
+				windowMin = Long.MAX_VALUE;
+				windowStart = now;
+			}
+
+			windowMin = Math.min(windowMin, latency);
+			baselineLatency = Math.min(previousWindowMin, windowMin);
+
+			// the limit only grows when it is actually the bottleneck
+			boolean applicationLimited = inFlight < limit / 2;
+			double gradient = Math.max(0.5, Math.min(1, tolerance * baselineLatency / latency));
+			if (applicationLimited && gradient == 1)
+				return;
+
+			double newLimit = limit * gradient + Math.sqrt(limit);
+			limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - Smoothing) + newLimit * Smoothing));
+		}
+	}
+
+	private static final long BaselineWindow = TimeUnit.SECONDS.toNanos(30);
+
+	private static final double Smoothing = 0.2;
+
+	private final ConcurrentHashMap<String, HostLimit> limits = new ConcurrentHashMap<>();
+
+	private volatile int initialLimit = 20;
+
+	private volatile int minLimit = 1;
+
+	private volatile int maxLimit = 200;
+
+	private volatile double tolerance = 1.5;
+
+	private volatile double backoffRatio = 0.9;
+
+	private volatile long maxWait;
+
+	public AdaptiveConcurrencyLimiter setInitialLimit(int initialLimit) {
+		this.initialLimit = initialLimit;
+		return this;
+	}
+
+	public AdaptiveConcurrencyLimiter setLimitRange(int minLimit, int maxLimit) {
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = Math.max(this.minLimit, maxLimit);
+		return this;
+	}
+
+	/**
+	 * @param tolerance How much slower than its baseline the host may respond before the limit starts shrinking, 1.5 by default.
+	 */
+	public AdaptiveConcurrencyLimiter setTolerance(double tolerance) {
+		this.tolerance = Math.max(1, tolerance);
+		return this;
+	}
+
+	/**
+	 * @param backoffRatio The factor the limit is multiplied by on every failed request, 0.9 by default.
+	 */
+	public AdaptiveConcurrencyLimiter setBackoffRatio(double backoffRatio) {
+		this.backoffRatio = backoffRatio;
+		return this;
+	}
+
+	/**
+	 * @param maxWait The time in ms a request beyond the limit waits for a permit before it is rejected, 0 by default to reject immediately.
+	 */
+	public AdaptiveConcurrencyLimiter setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+		return this;
+	}
+
+	public Map<String, HostStatistics> getStatistics() {
+		HashMap<String, HostStatistics> statistics = new HashMap<>();
+		for (HostLimit hostLimit : limits.values()) {
+			synchronized (hostLimit) {
+				statistics.put(hostLimit.host, new HostStatistics(hostLimit));
+			}
+		}
+
+		return statistics;
+	}
+
+	final Permit acquire(URL url)
+		throws IOException {
+		HostLimit hostLimit = getOrCreateLimit(url);
+		synchronized (hostLimit) {
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWait);
+			while (hostLimit.inFlight >= (int) hostLimit.limit) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					hostLimit.rejected++;
+					throw new ConcurrencyLimitExceededException(hostLimit.host, (int) hostLimit.limit);
+				}
+
+				try {
+					TimeUnit.NANOSECONDS.timedWait(hostLimit, remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for a permit to: " + hostLimit.host, e);
+				}
+			}
+
+			hostLimit.inFlight++;
+			return new Permit(hostLimit);
+		}
+	}
+
+	private HostLimit getOrCreateLimit(URL url) {
+		int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+		String host = url.getProtocol() + "://" + url.getHost() + ":" + port;
+
+		HostLimit hostLimit = limits.get(host);
+		if (hostLimit != null)
+			return hostLimit;
+
+		HostLimit newLimit = new HostLimit(host);
+		hostLimit = limits.putIfAbsent(host, newLimit);
+		return hostLimit != null ? hostLimit : newLimit;
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses request bodies, see {@link IHttpRequest#setBodyEncoder(BodyEncoder, int)}.
+ *
+ * The body is encoded while it is written to the connection, so it is never held whole in memory, and is sent chunked since its encoded length is
+ * not known up front. Other codecs, e.g. zstd or brotli, are plugged in by extending this class with the stream of the codec library.
+ */
+@SuppressWarnings( {
+	                   "unused",
+	                   "WeakerAccess"
+                   })
+public abstract class BodyEncoder {
+
+	public static final BodyEncoder GZip = gzip(Deflater.DEFAULT_COMPRESSION);
+
+	public static final BodyEncoder Deflate = deflate(Deflater.DEFAULT_COMPRESSION);
+
+	/**
+	 * @param level The compression level, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}
+	 */
+	public static BodyEncoder gzip(final int level) {
+		return new BodyEncoder("gzip") {
+			@Override
+			public OutputStream encode(OutputStream outputStream)
+				throws IOException {
+				return new LeveledGZIPOutputStream(outputStream, level);
+			}
+		};
+	}
+
+	/**
+	 * @param level The compression level, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}
+	 */
+	public static BodyEncoder deflate(final int level) {
+		return new BodyEncoder("deflate") {
+			@Override
+			public OutputStream encode(OutputStream outputStream) {
+				return new DeflaterOutputStream(outputStream, new Deflater(level), RequestBody.BufferSize) {
+					@Override
+					public void close()
+						throws IOException {
+						try {
+							super.close();
+						} finally {
+							def.end();
+						}
+					}
+				};
+			}
+		};
+	}
+
+	private final String name;
+
+	protected BodyEncoder(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return The content-encoding token of the codec, e.g. gzip
+	 */
+	public final String getName() {
+		return name;
+	}
+
+	/**
+	 * @param outputStream The stream the encoded bytes are to be written to
+	 *
+	 * @return A stream encoding the bytes written to it, closing it must finish the encoding, release the codec, and close the given stream.
+	 */
+	public abstract OutputStream encode(OutputStream outputStream)
+		throws IOException;
+
+	private static final class LeveledGZIPOutputStream
+		extends GZIPOutputStream {
+
+		private LeveledGZIPOutputStream(OutputStream outputStream, int level)
+			throws IOException {
+			super(outputStream, RequestBody.BufferSize);
+			def.setLevel(level);
+		}
+	}
+
+	/**
+	 * A body encoded on its way to the connection, counting the bytes of the original body.
+	 */
+	static final class EncodedBody
+		extends RequestBody {
+
+		private final RequestBody body;
+
+		private final BodyEncoder encoder;
+
+		private long decodedLength;
+
+		EncodedBody(RequestBody body, BodyEncoder encoder) {
+			this.body = body;
+			this.encoder = encoder;
+		}
+
+		final String getContentEncoding() {
+			return encoder.getName();
+		}
+
+		/**
+		 * @return The length of the original body, as written by the last attempt
+		 */
+		final long getDecodedLength() {
+			return decodedLength;
+		}
+
+		@Override
+		public long getContentLength() {
+			return -1;
+		}
+
+		@Override
+		public void writeTo(final OutputStream outputStream)
+			throws IOException {
+			decodedLength = 0;
+			// closing the encoder finishes the encoding, the connection stream itself is left open
+			OutputStream connectionStream = new FilterOutputStream(outputStream) {
+				@Override
+				public void write(byte[] buffer, int offset, int length)
+					throws IOException {
+					out.write(buffer, offset, length);
+				}
+
+				@Override
+				public void close()
+					throws IOException {
+					flush();
+				}
+			};
+
+			try (OutputStream encoderStream = encoder.encode(connectionStream)) {
+				body.writeTo(new FilterOutputStream(encoderStream) {
+					@Override
+					public void write(int b)
+						throws IOException {
+						out.write(b);
+						decodedLength++;
+					}
+
+					@Override
+					public void write(byte[] buffer, int offset, int length)
+						throws IOException {
+						out.write(buffer, offset, length);
+						decodedLength += length;
+					}
+				});
+			}
+		}
+
+		@Override
+		public void close()
+			throws IOException {
+			body.close();
+		}
+	}
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The buffers the I/O loops of the module copy through, shared by all the requests, see {@link HttpModule#getBufferPool()}.
+ *
+ * Buffers come in power of two size classes, from {@link #MinBufferSize} to {@link #MaxBufferSize}. Every thread keeps the last two released
+ * buffers of each size class to itself, as a body is often copied through one buffer into another, and the rest are kept in a shared pool, up
+ * to {@link #setMaxPooledBuffers(int)} buffers per size class, beyond which released buffers are left to the garbage collector. A thread that
+ * ends right after a single transaction, e.g. of an execution pool with {@link HttpModule.ExecutionPool#setVirtualThreads(boolean) virtual
+ * threads}, hands its cached buffers back to the shared pool when the transaction ends, see {@link #releaseThreadCache()}.
+ *
+ * Heap and direct buffers are pooled apart, the module itself copies through streams and only uses heap buffers, direct buffers are for
+ * transports and listeners writing to channels.
+ *
+ * A buffer must not be used once released, nor released twice.
+ */
+@SuppressWarnings( {
+	                   "unused",
+	                   "WeakerAccess"
+                   })
+public final class BufferPool {
+
+	public static final int MinBufferSize = 1024;
+
+	public static final int MaxBufferSize = 64 * 1024;
+
+	private static final int SizeClasses = Integer.numberOfTrailingZeros(MaxBufferSize / MinBufferSize) + 1;
+
+	private static final int ThreadLocalBuffers = 2;
+
+	static final BufferPool Instance = new BufferPool();
+
+	public static final class Statistics {
+
+		/**
+		 * Buffers served from the cache of the acquiring thread
+		 */
+		public final long threadLocalHits;
+
+		/**
+		 * Buffers served from the shared pool
+		 */
+		public final long sharedHits;
+
+		/**
+		 * Buffers allocated since none of their size class was pooled
+		 */
+		public final long misses;
+
+		/**
+		 * Released buffers left to the garbage collector since the pool of their size class was full
+		 */
+		public final long dropped;
+
+		private Statistics(long threadLocalHits, long sharedHits, long misses, long dropped) {
+			this.threadLocalHits = threadLocalHits;
+			this.sharedHits = sharedHits;
+			this.misses = misses;
+			this.dropped = dropped;
+		}
+
+		public final double getHitRatio() {
+			long acquired = threadLocalHits + sharedHits + misses;
+			return acquired == 0 ? 0 : (double) (threadLocalHits + sharedHits) / acquired;
+		}
+
+		@Override
+		public String toString() {
+			return "hits=" + threadLocalHits + "+" + sharedHits + ", misses=" + misses + ", dropped=" + dropped;
+		}
+	}
+
+	private final Pool<byte[]> heap = new Pool<byte[]>() {
+		@Override
+		byte[] allocate(int size) {
+			return new byte[size];
+		}
+
+		@Override
+		int capacityOf(byte[] buffer) {
+			return buffer.length;
+		}
+	};
+
+	private final Pool<ByteBuffer> direct = new Pool<ByteBuffer>() {
+		@Override
+		ByteBuffer allocate(int size) {
+			return ByteBuffer.allocateDirect(size);
+		}
+
+		@Override
+		int capacityOf(ByteBuffer buffer) {
+			return buffer.capacity();
+		}
+	};
+
+	private volatile int bufferSize = MaxBufferSize;
+
+	private volatile int maxPooledBuffers = 32;
+
+	BufferPool() {}
+
+	/**
+	 * @param bufferSize The size of the buffers the module copies bodies through, rounded up to a size class, {@link #MaxBufferSize} by default.
+	 */
+	public BufferPool setBufferSize(int bufferSize) {
+		this.bufferSize = sizeOf(indexOf(bufferSize));
+		return this;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * @param maxPooledBuffers The max number of buffers of each size class kept in the shared pool, 32 by default.
+	 */
+	public BufferPool setMaxPooledBuffers(int maxPooledBuffers) {
+		this.maxPooledBuffers = Math.max(0, maxPooledBuffers);
+		return this;
+	}
+
+	/**
+	 * @param size The min size of the buffer, requests above {@link #MaxBufferSize} get a buffer of that size.
+	 *
+	 * @return A buffer of the size class of the given size, its content is undefined.
+	 */
+	public byte[] acquire(int size) {
+		return heap.acquire(size);
+	}
+
+	/**
+	 * @param buffer A buffer acquired from this pool, buffers of other sizes are ignored.
+	 */
+	public void release(byte[] buffer) {
+		heap.release(buffer);
+	}
+
+	/**
+	 * @param size The min capacity of the buffer, requests above {@link #MaxBufferSize} get a buffer of that capacity.
+	 *
+	 * @return A cleared direct buffer of the size class of the given size.
+	 */
+	public ByteBuffer acquireDirect(int size) {
+		ByteBuffer buffer = direct.acquire(size);
+		buffer.clear();
+		return buffer;
+	}
+
+	public void releaseDirect(ByteBuffer buffer) {
+		if (buffer.isDirect())
+			direct.release(buffer);
+	}
+
+	/**
+	 * Hands the buffers cached by the current thread back to the shared pool, for a thread that is about to end.
+	 */
+	public void releaseThreadCache() {
+		heap.releaseThreadCache();
+		direct.releaseThreadCache();
+	}
+
+	public Statistics getStatistics() {
+		return heap.getStatistics();
+	}
+
+	public Statistics getDirectStatistics() {
+		return direct.getStatistics();
+	}
+
+	/**
+	 * Copies the stream through a pooled buffer, does not close either stream.
+	 *
+	 * @return The number of bytes copied
+	 */
+	final long copy(InputStream inputStream, OutputStream outputStream)
+		throws IOException {
+		byte[] buffer = acquire(bufferSize);
+		try {
+			long copied = 0;
+			int length;
+			while ((length = inputStream.read(buffer)) != -1) {
+				outputStream.write(buffer, 0, length);
+				copied += length;
+			}
+
+			return copied;
+		} finally {
+			release(buffer);
+		}
+	}
+
+	private static int indexOf(int size) {
+		if (size <= MinBufferSize)
+			return 0;
+
+		return Math.min(SizeClasses - 1, 32 - Integer.numberOfLeadingZeros(size - 1) - Integer.numberOfTrailingZeros(MinBufferSize));
+	}
+
+	private static int sizeOf(int index) {
+		return MinBufferSize << index;
+	}
+
+	private abstract class Pool<Buffer> {
+
+		private final ThreadLocal<Object[]> cached = new ThreadLocal<Object[]>() {
+			@Override
+			protected Object[] initialValue() {
+				return new Object[SizeClasses * ThreadLocalBuffers];
+			}
+		};
+
+		private final ArrayList<ArrayDeque<Buffer>> shared = new ArrayList<>(SizeClasses);
+
+		private final LongAdder threadLocalHits = new LongAdder();
+
+		private final LongAdder sharedHits = new LongAdder();
+
+		private final LongAdder misses = new LongAdder();
+
+		private final LongAdder dropped = new LongAdder();
+
+		Pool() {
+			for (int i = 0; i < SizeClasses; i++) {
+				shared.add(new ArrayDeque<Buffer>());
+			}
+		}
+
+		abstract Buffer allocate(int size);
+
+		abstract int capacityOf(Buffer buffer);
+
+		@SuppressWarnings("unchecked")
+		final Buffer acquire(int size) {
+			int index = indexOf(size);
+			Object[] cached = this.cached.get();
+			for (int slot = index * ThreadLocalBuffers; slot < (index + 1) * ThreadLocalBuffers; slot++) {
+				if (cached[slot] == null)
+					continue;
+
+				Buffer buffer = (Buffer) cached[slot];
+				cached[slot] = null;
+				threadLocalHits.increment();
+				return buffer;
+			}
+
+			Buffer buffer;
+			ArrayDeque<Buffer> pooled = shared.get(index);
+			synchronized (pooled) {
+				buffer = pooled.poll();
+			}
+
+			if (buffer != null) {
+				sharedHits.increment();
+				return buffer;
+			}
+
+			misses.increment();
+			return allocate(sizeOf(index));
+		}
+
+		final void release(Buffer buffer) {
+			int capacity = capacityOf(buffer);
+			int index = indexOf(capacity);
+			if (capacity != sizeOf(index))
+				return;
+
+			Object[] cached = this.cached.get();
+			for (int slot = index * ThreadLocalBuffers; slot < (index + 1) * ThreadLocalBuffers; slot++) {
+				if (cached[slot] != null)
+					continue;
+
+				cached[slot] = buffer;
+				return;
+			}
+
+			releaseShared(buffer, index);
+		}
+
+		@SuppressWarnings("unchecked")
+		final void releaseThreadCache() {
+			Object[] cached = this.cached.get();
+			this.cached.remove();
+			for (int slot = 0; slot < cached.length; slot++) {
+				if (cached[slot] != null)
+					releaseShared((Buffer) cached[slot], slot / ThreadLocalBuffers);
+			}
+		}
+
+		private void releaseShared(Buffer buffer, int index) {
+			ArrayDeque<Buffer> pooled = shared.get(index);
+			synchronized (pooled) {
+				if (pooled.size() < maxPooledBuffers) {
+					pooled.push(buffer);
+					return;
+				}
+			}
+
+			dropped.increment();
+		}
+
+		final Statistics getStatistics() {
+			return new Statistics(threadLocalHits.sum(), sharedHits.sum(), misses.sum(), dropped.sum());
+		}
+	}
+
+	/**
+	 * Collects a body into a pooled buffer, and only allocates once the body outgrows it, the pooled buffer is released on {@link #close()}.
+	 *
+	 * The collected bytes must be taken, via {@link #toByteArray()} or {@link #toString(String)}, before the stream is closed.
+	 */
+	static final class PooledOutputStream
+		extends ByteArrayOutputStream {
+
+		/**
+		 * The max length allocated up front for a larger expected length, which comes from a header and is not to be trusted with more
+		 */
+		private static final int MaxPresize = 8 * 1024 * 1024;
+
+		private final BufferPool pool;
+
+		private byte[] pooled;
+
+		/**
+		 * @param expectedLength The expected length of the body, or a non-positive value if unknown
+		 */
+		PooledOutputStream(BufferPool pool, int expectedLength) {
+			super(0);
+			this.pool = pool;
+			if (expectedLength > MaxBufferSize)
+				buf = new byte[Math.min(expectedLength, MaxPresize)];
+			else
+				buf = pooled = pool.acquire(expectedLength > 0 ? expectedLength : pool.bufferSize);
+		}
+
+		@Override
+		public synchronized void write(int b) {
+			ensureCapacity(1);
+			super.write(b);
+		}
+
+		@Override
+		public synchronized void write(byte[] buffer, int offset, int length) {
+			ensureCapacity(length);
+			super.write(buffer, offset, length);
+		}
+
+		private void ensureCapacity(int length) {
+			if (pooled == null || count + length <= buf.length)
+				return;
+
+			// the body outgrew the pooled buffer, it is copied out so the pooled buffer can be released
+			buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + length));
+			pool.release(pooled);
+			pooled = null;
+		}
+
+		@Override
+		public void close() {
+			if (pooled == null)
+				return;
+
+			buf = new byte[0];
+			count = 0;
+			pool.release(pooled);
+			pooled = null;
+		}
+	}
+}
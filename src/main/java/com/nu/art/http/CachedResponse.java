@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A decoded response body along with the metadata required to compute its freshness and to revalidate it.
+ */
+public final class CachedResponse {
+
+	public final String url;
+
+	public final int responseCode;
+
+	/**
+	 * Lower-cased header names, describing the decoded body (without content-encoding)
+	 */
+	public final Map<String, List<String>> headers;
+
+	/**
+	 * The values the original request had for the headers listed by the response Vary header
+	 */
+	public final Map<String, String> varyHeaders;
+
+	public final byte[] body;
+
+	public final long requestTime;
+
+	public final long responseTime;
+
+	public CachedResponse(String url, int responseCode, Map<String, List<String>> headers, Map<String, String> varyHeaders, byte[] body, long requestTime, long responseTime) {
+		this.url = url;
+		this.responseCode = responseCode;
+		this.headers = Collections.unmodifiableMap(headers);
+		this.varyHeaders = Collections.unmodifiableMap(varyHeaders);
+		this.body = body;
+		this.requestTime = requestTime;
+		this.responseTime = responseTime;
+	}
+
+	public final String getHeader(String key) {
+		List<String> values = headers.get(key);
+		return values == null || values.isEmpty() ? null : values.get(0);
+	}
+
+	/**
+	 * @return An estimation of the memory held by this entry.
+	 */
+	public final long size() {
+		long size = body.length + url.length() * 2;
+		for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+			size += header.getKey().length() * 2;
+			for (String value : header.getValue()) {
+				size += value.length() * 2;
+			}
+		}
+
+		return size;
+	}
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stops sending requests to an endpoint that keeps failing, so they fail immediately instead of each waiting for its own timeout.
+ *
+ * Every endpoint (a host, or a request tag) has its own circuit. A closed circuit records the outcome of the last {@link #setSlidingWindow(int, int)
+ * window} requests, and opens once the failure rate within the window reaches the threshold. While open every request fails fast with a
+ * {@link CircuitOpenException}. Once the open duration passes the circuit turns half-open and lets a few trial requests through: if they all succeed
+ * the circuit closes, if any fails it opens again.
+ *
+ * A failure is an I/O error, a server error or a throttling response, a client error response says nothing about the health of the endpoint.
+ */
+@SuppressWarnings( {
+	                   "unused",
+	                   "WeakerAccess"
+                   })
+public final class CircuitBreaker {
+
+	public enum State {
+		Closed,
+		Open,
+		HalfOpen,
+	}
+
+	public enum KeyType {
+		Host,
+		/**
+		 * Requests without a tag fall back to their host
+		 */
+		Tag,
+	}
+
+	interface OnStateChangedListener {
+
+		void onStateChanged(String key, State from, State to);
+	}
+
+	/**
+	 * The right to send a single request through a circuit, which must be concluded with its outcome.
+	 */
+	final class Permit {
+
+		private final Circuit circuit;
+
+		/**
+		 * Whether this is a trial request of a half-open circuit, and of which opening
+		 */
+		private final boolean trial;
+
+		private final long openedAt;
+
+		private boolean concluded;
+
+		private Permit(Circuit circuit) {
+			this.circuit = circuit;
+			this.trial = circuit.state == State.HalfOpen;
+			this.openedAt = circuit.openedAt;
+		}
+
+		final void onCompleted(boolean failed) {
+			State from;
+			State to;
+			synchronized (circuit) {
+				if (concluded)
+					return;
+
+				concluded = true;
+				from = circuit.state;
+				circuit.record(this, failed);
+				to = circuit.state;
+			}
+
+			dispatchStateChanged(circuit.key, from, to);
+		}
+
+		/**
+		 * Concludes the permit without recording an outcome, when the request was never sent.
+		 */
+		final void ignore() {
+			synchronized (circuit) {
+				if (concluded)
+					return;
+
+				concluded = true;
+				if (circuit.isCurrentTrial(this))
+					circuit.trialsInFlight--;
+			}
+		}
+	}
+
+	private final class Circuit {
+
+		final String key;
+
+		final boolean[] outcomes = new boolean[windowSize];
+
+		int recorded;
+
+		int index;
+
+		int failures;
+
+		State state = State.Closed;
+
+		long openedAt;
+
+		int trialsInFlight;
+
+		int trialSuccesses;
+
+		Circuit(String key) {
+			this.key = key;
+		}
+
+		/**
+		 * Must be called while holding the lock of this circuit.
+		 */
+		void record(Permit permit, boolean failed) {
+			switch (state) {
+				case Closed:
+					if (permit.trial)
+						break;
+
+					if (recorded == outcomes.length) {
+						if (outcomes[index])
+							failures--;
+					} else
+						recorded++;
+
+					outcomes[index] = failed;
+					index = (index + 1) % outcomes.length;
+					if (failed)
+						failures++;
+
+					if (recorded >= minimumCalls && failures >= recorded * failureRateThreshold)
+						open();
+					break;
+
+				case HalfOpen:
+					// only the trials let through since the circuit last opened decide whether it closes
+					if (!isCurrentTrial(permit))
+						break;
+
+					trialsInFlight--;
+					if (failed) {
+						open();
+						break;
+					}
+
+					if (++trialSuccesses >= halfOpenTrials)
+						close();
+					break;
+
+				case Open:
+					// a request that started before the circuit opened
+					break;
+			}
+		}
+
+		boolean isCurrentTrial(Permit permit) {
+			return state == State.HalfOpen && permit.trial && permit.openedAt == openedAt;
+		}
+
+		void open() {
+			state = State.Open;
+			openedAt = System.currentTimeMillis();
+			trialsInFlight = 0;
+			trialSuccesses = 0;
+		}
+
+		void close() {
+			state = State.Closed;
+			recorded = 0;
+			index = 0;
+			failures = 0;
+		}
+	}
+
+	private final ConcurrentHashMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+	private KeyType keyType = KeyType.Host;
+
+	private int windowSize = 20;
+
+	private int minimumCalls = 10;
+
+	private double failureRateThreshold = 0.5;
+
+	private long openDuration = 10000;
+
+	private int halfOpenTrials = 3;
+
+	private OnStateChangedListener listener;
+
+	public CircuitBreaker setKeyType(KeyType keyType) {
+		this.keyType = keyType;
+		return this;
+	}
+
+	/**
+	 * @param windowSize   The number of most recent outcomes the failure rate is computed over, 20 by default
+	 * @param minimumCalls The number of outcomes needed before the circuit may open, 10 by default
+	 */
+	public CircuitBreaker setSlidingWindow(int windowSize, int minimumCalls) {
+		this.windowSize = Math.max(1, windowSize);
+		this.minimumCalls = Math.max(1, Math.min(this.windowSize, minimumCalls));
+		return this;
+	}
+
+	/**
+	 * @param failureRateThreshold The failure rate within the window at which the circuit opens, 0.5 by default.
+	 */
+	public CircuitBreaker setFailureRateThreshold(double failureRateThreshold) {
+		this.failureRateThreshold = failureRateThreshold;
+		return this;
+	}
+
+	/**
+	 * @param openDuration The time in ms an open circuit fails requests before letting trial requests through, 10 seconds by default.
+	 */
+	public CircuitBreaker setOpenDuration(long openDuration) {
+		this.openDuration = openDuration;
+		return this;
+	}
+
+	/**
+	 * @param halfOpenTrials The number of trial requests that must succeed for a half-open circuit to close, 3 by default.
+	 */
+	public CircuitBreaker setHalfOpenTrials(int halfOpenTrials) {
+		this.halfOpenTrials = Math.max(1, halfOpenTrials);
+		return this;
+	}
+
+	public Map<String, State> getStates() {
+		HashMap<String, State> states = new HashMap<>();
+		for (Circuit circuit : circuits.values()) {
+			synchronized (circuit) {
+				states.put(circuit.key, circuit.state);
+			}
+		}
+
+		return states;
+	}
+
+	final void setListener(OnStateChangedListener listener) {
+		this.listener = listener;
+	}
+
+	final Permit acquire(URL url, String tag)
+		throws CircuitOpenException {
+		Circuit circuit = getOrCreateCircuit(getKey(url, tag));
+		Permit permit;
+		State from;
+		State to;
+		synchronized (circuit) {
+			from = circuit.state;
+			if (circuit.state == State.Open) {
+				long remaining = circuit.openedAt + openDuration - System.currentTimeMillis();
+				if (remaining > 0)
+					throw new CircuitOpenException(circuit.key, remaining);
+
+				circuit.state = State.HalfOpen;
+			}
+
+			if (circuit.state == State.HalfOpen) {
+				if (circuit.trialsInFlight + circuit.trialSuccesses >= halfOpenTrials)
+					throw new CircuitOpenException(circuit.key, 0);
+
+				circuit.trialsInFlight++;
+			}
+
+			to = circuit.state;
+			permit = new Permit(circuit);
+		}
+
+		dispatchStateChanged(circuit.key, from, to);
+		return permit;
+	}
+
+	private void dispatchStateChanged(String key, State from, State to) {
+		OnStateChangedListener listener = this.listener;
+		if (from != to && listener != null)
+			listener.onStateChanged(key, from, to);
+	}
+
+	private String getKey(URL url, String tag) {
+		if (keyType == KeyType.Tag && tag != null)
+			return tag;
+
+		int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+		return url.getProtocol() + "://" + url.getHost() + ":" + port;
+	}
+
+	private Circuit getOrCreateCircuit(String key) {
+		Circuit circuit = circuits.get(key);
+		if (circuit != null)
+			return circuit;
+
+		Circuit newCircuit = new Circuit(key);
+		circuit = circuits.putIfAbsent(key, newCircuit);
+		return circuit != null ? circuit : newCircuit;
+	}
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request to an endpoint whose circuit is open.
+ */
+public class CircuitOpenException
+	extends IOException {
+
+	public final String key;
+
+	/**
+	 * The time in ms until the circuit lets trial requests through, 0 if it is already half-open
+	 */
+	public final long retryIn;
+
+	public CircuitOpenException(String key, long retryIn) {
+		super("Circuit is open for: " + key + (retryIn > 0 ? ", retry in " + retryIn + "ms" : ", trial requests in progress"));
+		this.key = key;
+		this.retryIn = retryIn;
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import com.nu.art.http.BufferPool.PooledOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Fans the result of a single in-flight transaction out to every listener that joined it, each listener receives its own copy of the response.
+ */
+final class CoalescedResponseListener
+	extends HttpResponseListener<InputStream, InputStream> {
+
+	private final Map<String, CoalescedResponseListener> inFlight;
+
+	private final String key;
+
+	private final ArrayList<HttpResponseListener> listeners = new ArrayList<>();
+
+	private boolean completed;
+
+	private HttpRequestHandle execution;
+
+	CoalescedResponseListener(Map<String, CoalescedResponseListener> inFlight, String key, HttpResponseListener listener) {
+		super(InputStream.class, InputStream.class);
+		this.inFlight = inFlight;
+		this.key = key;
+		listeners.add(listener);
+	}
+
+	/**
+	 * @return false if the response has already started to be dispatched, and the listener could not join this transaction.
+	 */
+	final synchronized boolean join(HttpResponseListener listener) {
+		if (completed)
+			return false;
+
+		listeners.add(listener);
+		return true;
+	}
+
+	final void setExecution(HttpRequestHandle execution) {
+		boolean abandoned;
+		synchronized (this) {
+			this.execution = execution;
+			abandoned = listeners.isEmpty();
+		}
+
+		if (abandoned)
+			execution.cancel();
+	}
+
+	/**
+	 * Once the last listener left, no one is waiting for the response and the transaction itself is cancelled.
+	 *
+	 * @return false if the response has already started to be dispatched, and the listener will still receive it.
+	 */
+	final boolean leave(HttpResponseListener listener) {
+		HttpRequestHandle execution;
+		synchronized (this) {
+			if (completed || !listeners.remove(listener))
+				return false;
+
+			if (!listeners.isEmpty())
+				return true;
+
+			completed = true;
+			execution = this.execution;
+		}
+
+		synchronized (inFlight) {
+			if (inFlight.get(key) == this)
+				inFlight.remove(key);
+		}
+
+		if (execution != null)
+			execution.cancel();
+
+		return true;
+	}
+
+	private HttpResponseListener[] complete() {
+		synchronized (inFlight) {
+			if (inFlight.get(key) == this)
+				inFlight.remove(key);
+		}
+
+		synchronized (this) {
+			completed = true;
+			return listeners.toArray(new HttpResponseListener[listeners.size()]);
+		}
+	}
+
+	@Override
+	final void onSuccess(HttpResponse httpResponse)
+		throws IOException {
+		HttpResponseListener[] listeners = complete();
+		if (listeners.length == 0)
+			return;
+
+		if (listeners.length == 1) {
+			listeners[0].onSuccess(httpResponse);
+			return;
+		}
+
+		byte[] body = readBody(httpResponse);
+		for (HttpResponseListener listener : listeners) {
+			HttpResponse response = httpResponse.copy(body);
+			try {
+				listener.onSuccess(response);
+			} catch (Throwable e) {
+				HttpResponse errorResponse = httpResponse.copy(null);
+				errorResponse.exception = e;
+				dispatchError(listener, errorResponse);
+			}
+		}
+	}
+
+	@Override
+	final void onError(HttpResponse httpResponse)
+		throws IOException {
+		HttpResponseListener[] listeners = complete();
+		if (listeners.length == 0)
+			return;
+
+		if (listeners.length == 1) {
+			listeners[0].onError(httpResponse);
+			return;
+		}
+
+		byte[] body = readBody(httpResponse);
+		for (HttpResponseListener listener : listeners) {
+			dispatchError(listener, httpResponse.copy(body));
+		}
+	}
+
+	private void dispatchError(HttpResponseListener listener, HttpResponse response) {
+		try {
+			listener.onError(response);
+		} catch (Throwable e) {
+			// the same failure would have been logged and dropped by the executing queue
+		}
+	}
+
+	private byte[] readBody(HttpResponse httpResponse)
+		throws IOException {
+		if (httpResponse.inputStream == null)
+			return null;
+
+		try (PooledOutputStream bos = new PooledOutputStream(BufferPool.Instance, httpResponse.responseSize)) {
+			BufferPool.Instance.copy(httpResponse.inputStream, bos);
+			return bos.toByteArray();
+		}
+	}
+
+	@Override
+	public void onSuccess(HttpResponse httpResponse, InputStream responseBody) {}
+
+	@Override
+	public void onError(HttpResponse httpResponse, InputStream errorBody) {}
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request is rejected because the host already has as many requests in flight as its adaptive limit allows.
+ */
+public class ConcurrencyLimitExceededException
+	extends IOException {
+
+	public final String host;
+
+	public final int limit;
+
+	public ConcurrencyLimitExceededException(String host, int limit) {
+		super("Too many requests in flight to: " + host + ", limit: " + limit);
+		this.host = host;
+		this.limit = limit;
+	}
+}
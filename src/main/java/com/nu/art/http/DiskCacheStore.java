@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import com.nu.art.core.file.Charsets;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * A {@link HttpCacheStore} persisting each entry into its own file under a directory, evicting the least recently used files once the directory
+ * exceeds its max size.
+ */
+public final class DiskCacheStore
+	implements HttpCacheStore {
+
+	private static final int FormatVersion = 1;
+
+	private static final String Extension = ".cache";
+
+	private final File directory;
+
+	private final long maxSize;
+
+	private long size = -1;
+
+	public DiskCacheStore(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+	@Override
+	public synchronized CachedResponse get(String key) {
+		File file = getFile(key);
+		if (!file.exists())
+			return null;
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			CachedResponse response = read(in);
+			if (!key.equals(response.url))
+				return null;
+
+			file.setLastModified(System.currentTimeMillis());
+			return response;
+		} catch (IOException e) {
+			deleteFile(file);
+			return null;
+		} finally {
+			close(in);
+		}
+	}
+
+	@Override
+	public synchronized void put(String key, CachedResponse response) {
+		if (!directory.exists() && !directory.mkdirs())
+			return;
+
+		File file = getFile(key);
+		File tempFile = new File(directory, file.getName() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			write(out, response);
+			out.close();
+			out = null;
+
+			deleteFile(file);
+			if (!tempFile.renameTo(file)) {
+				deleteFile(tempFile);
+				return;
+			}
+
+			if (size != -1)
+				size += file.length();
+		} catch (IOException e) {
+			close(out);
+			deleteFile(tempFile);
+			return;
+		}
+
+		trimToSize();
+	}
+
+	@Override
+	public synchronized void remove(String key) {
+		deleteFile(getFile(key));
+	}
+
+	@Override
+	public synchronized void clear() {
+		for (File file : listFiles()) {
+			deleteFile(file);
+		}
+	}
+
+	private void trimToSize() {
+		if (size == -1) {
+			size = 0;
+			for (File file : listFiles()) {
+				size += file.length();
+			}
+		}
+
+		if (size <= maxSize)
+			return;
+
+		File[] files = listFiles();
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File o1, File o2) {
+				return Long.compare(o1.lastModified(), o2.lastModified());
+			}
+		});
+
+		for (int i = 0; i < files.length && size > maxSize; i++) {
+			deleteFile(files[i]);
+		}
+	}
+
+	private void deleteFile(File file) {
+		long length = file.length();
+		if (file.delete() && size != -1)
+			size -= length;
+	}
+
+	private File[] listFiles() {
+		File[] files = directory.listFiles();
+		if (files == null)
+			return new File[0];
+
+		ArrayList<File> cacheFiles = new ArrayList<>();
+		for (File file : files) {
+			if (file.getName().endsWith(Extension))
+				cacheFiles.add(file);
+		}
+
+		return cacheFiles.toArray(new File[cacheFiles.size()]);
+	}
+
+	private File getFile(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(Charsets.UTF_8.encoding));
+			StringBuilder name = new StringBuilder();
+			for (byte b : digest) {
+				name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+
+			return new File(directory, name.append(Extension).toString());
+		} catch (NoSuchAlgorithmException | IOException e) {
+			throw new IllegalStateException("Cannot hash cache key", e);
+		}
+	}
+
+	private static void write(DataOutputStream out, CachedResponse response)
+		throws IOException {
+		out.writeInt(FormatVersion);
+		out.writeUTF(response.url);
+		out.writeInt(response.responseCode);
+		out.writeLong(response.requestTime);
+		out.writeLong(response.responseTime);
+
+		out.writeInt(response.headers.size());
+		for (Entry<String, List<String>> header : response.headers.entrySet()) {
+			out.writeUTF(header.getKey());
+			out.writeInt(header.getValue().size());
+			for (String value : header.getValue()) {
+				out.writeUTF(value);
+			}
+		}
+
+		out.writeInt(response.varyHeaders.size());
+		for (Entry<String, String> header : response.varyHeaders.entrySet()) {
+			out.writeUTF(header.getKey());
+			out.writeBoolean(header.getValue() != null);
+			if (header.getValue() != null)
+				out.writeUTF(header.getValue());
+		}
+
+		out.writeInt(response.body.length);
+		out.write(response.body);
+	}
+
+	private static CachedResponse read(DataInputStream in)
+		throws IOException {
+		if (in.readInt() != FormatVersion)
+			throw new IOException("Unsupported cache entry version");
+
+		String url = in.readUTF();
+		int responseCode = in.readInt();
+		long requestTime = in.readLong();
+		long responseTime = in.readLong();
+
+		int headerCount = in.readInt();
+		Map<String, List<String>> headers = new HashMap<>();
+		for (int i = 0; i < headerCount; i++) {
+			String key = in.readUTF();
+			int valueCount = in.readInt();
+			List<String> values = new ArrayList<>(valueCount);
+			for (int j = 0; j < valueCount; j++) {
+				values.add(in.readUTF());
+			}
+			headers.put(key, values);
+		}
+
+		int varyCount = in.readInt();
+		Map<String, String> varyHeaders = new HashMap<>();
+		for (int i = 0; i < varyCount; i++) {
+			String key = in.readUTF();
+			varyHeaders.put(key, in.readBoolean() ? in.readUTF() : null);
+		}
+
+		byte[] body = new byte[in.readInt()];
+		in.readFully(body);
+		return new CachedResponse(url, responseCode, headers, varyHeaders, body, requestTime, responseTime);
+	}
+
+	private static void close(Closeable closeable) {
+		try {
+			if (closeable != null)
+				closeable.close();
+		} catch (IOException ignore) {
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+/**
+ * A point in time gauge of an execution pool.
+ */
+public final class ExecutionPoolStatistics {
+
+	public final String key;
+
+	/**
+	 * The max number of transactions the pool executes concurrently
+	 */
+	public final int capacity;
+
+	public final int active;
+
+	public final int queued;
+
+	ExecutionPoolStatistics(String key, int capacity, int active, int queued) {
+		this.key = key;
+		this.capacity = capacity;
+		this.active = active;
+		this.queued = queued;
+	}
+
+	/**
+	 * @return The ratio of busy executors, above 1 when transactions are waiting for an executor.
+	 */
+	public final double getSaturation() {
+		return capacity == 0 ? 0 : (double) (active + queued) / capacity;
+	}
+
+	@Override
+	public String toString() {
+		return key + ": active=" + active + "/" + capacity + ", queued=" + queued;
+	}
+}
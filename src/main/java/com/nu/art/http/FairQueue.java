@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A self-clocked weighted fair queue: items are kept FIFO per flow, and each item is stamped with a virtual finish time that advances by the inverse
+ * of its weight, the item with the earliest finish time is served first.
+ *
+ * A flow with twice the weight gets twice the share of the executors while both are backlogged, and a heavy item arriving behind a long backlog of
+ * light items is served next rather than last. Items whose deadline has passed are never served, they are handed back to the caller instead.
+ */
+final class FairQueue<Item> {
+
+	static final long NoDeadline = Long.MAX_VALUE;
+
+	private final class Entry {
+
+		final Item item;
+
+		final long deadline;
+
+		final double finish;
+
+		Entry(Item item, long deadline, double finish) {
+			this.item = item;
+			this.deadline = deadline;
+			this.finish = finish;
+		}
+	}
+
+	private final class Flow {
+
+		final String key;
+
+		final ArrayDeque<Entry> entries = new ArrayDeque<>();
+
+		double lastFinish;
+
+		Flow(String key) {
+			this.key = key;
+		}
+	}
+
+	private final HashMap<String, Flow> flows = new HashMap<>();
+
+	private final ArrayList<Flow> activeFlows = new ArrayList<>();
+
+	private double virtualTime;
+
+	private int size;
+
+	/**
+	 * @param flow     The key of the flow this item is queued in, items of the same flow are served in order
+	 * @param weight   The relative share of the flow, must be positive
+	 * @param deadline The {@link System#nanoTime()} after which the item is dropped, or {@link #NoDeadline}
+	 */
+	final synchronized void add(Item item, String flow, int weight, long deadline) {
+		Flow _flow = flows.get(flow);
+		if (_flow == null) {
+			flows.put(flow, _flow = new Flow(flow));
+			activeFlows.add(_flow);
+		}
+
+		double start = Math.max(virtualTime, _flow.lastFinish);
+		_flow.lastFinish = start + 1d / Math.max(1, weight);
+		_flow.entries.add(new Entry(item, deadline, _flow.lastFinish));
+		size++;
+	}
+
+	/**
+	 * @param expired Collects the items whose deadline has passed while they were waiting
+	 *
+	 * @return The next item to serve, or null if the queue is empty.
+	 */
+	final synchronized Item poll(List<Item> expired) {
+		long now = System.nanoTime();
+		while (size > 0) {
+			Flow next = null;
+			for (Flow flow : activeFlows) {
+				if (next == null || flow.entries.peek().finish < next.entries.peek().finish)
+					next = flow;
+			}
+
+			Entry entry = next.entries.poll();
+			size--;
+			if (next.entries.isEmpty()) {
+				// an idle flow restarts at the current virtual time, so there is no need to remember it
+				flows.remove(next.key);
+				activeFlows.remove(next);
+			}
+
+			virtualTime = entry.finish;
+			if (entry.deadline != NoDeadline && entry.deadline - now < 0) {
+				expired.add(entry.item);
+				continue;
+			}
+
+			return entry.item;
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return true if the item was still waiting in the queue, and is now removed.
+	 */
+	final synchronized boolean remove(Item item) {
+		for (Flow flow : activeFlows) {
+			Iterator<Entry> iterator = flow.entries.iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().item != item)
+					continue;
+
+				iterator.remove();
+				size--;
+				if (flow.entries.isEmpty()) {
+					flows.remove(flow.key);
+					activeFlows.remove(flow);
+				}
+
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	final synchronized List<Item> clear() {
+		ArrayList<Item> items = new ArrayList<>(size);
+		for (Flow flow : activeFlows) {
+			for (Entry entry : flow.entries) {
+				items.add(entry.item);
+			}
+		}
+
+		flows.clear();
+		activeFlows.clear();
+		size = 0;
+		return items;
+	}
+
+	final synchronized int size() {
+		return size;
+	}
+}
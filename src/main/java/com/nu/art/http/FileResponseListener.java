@@ -4,57 +4,131 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
+/**
+ * Writes the response body to a file through its {@link FileChannel}.
+ *
+ * The listeners of an {@link HttpDownload} each write a single range of the file instead, at its position within a channel shared by all the
+ * ranges, and verify the response is a partial content response of exactly that range.
+ */
 public abstract class FileResponseListener<ErrorType>
 	extends HttpResponseListener<InputStream, ErrorType> {
 
 	private final File targetFile;
 
+	private final FileChannel channel;
+
+	private final long position;
+
+	private final long length;
+
+	private final long totalLength;
+
 	protected FileResponseListener(File targetFile, Class<ErrorType> errorType) {
 		super(InputStream.class, errorType);
 		this.targetFile = targetFile;
+		this.channel = null;
+		this.position = 0;
+		this.length = -1;
+		this.totalLength = -1;
+	}
+
+	/**
+	 * @param channel     The channel of the target file, left open
+	 * @param position    The position of the range in the file
+	 * @param length      The length of the range
+	 * @param totalLength The length of the whole file
+	 */
+	FileResponseListener(FileChannel channel, long position, long length, long totalLength, Class<ErrorType> errorType) {
+		super(InputStream.class, errorType);
+		this.targetFile = null;
+		this.channel = channel;
+		this.position = position;
+		this.length = length;
+		this.totalLength = totalLength;
 	}
 
 	@Override
 	public final void onSuccess(HttpResponse httpResponse, InputStream inputStream) {
-		FileOutputStream outputStream = null;
 		try {
-			List<String> header = httpResponse.getHeader("content-length");
-			int available;
-			if (header.size() > 0)
-				available = Integer.parseInt(header.get(0));
+			if (channel != null)
+				writeRange(httpResponse, inputStream);
 			else
-				available = inputStream.available();
+				writeFile(httpResponse, inputStream);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		onDownloadCompleted();
+	}
 
-			outputStream = new FileOutputStream(targetFile);
-			byte[] buffer = new byte[1024];
-			int length;
-			long cached = 0;
+	private void writeFile(HttpResponse httpResponse, InputStream inputStream)
+		throws IOException {
+		// the content length of an encoded response is the length of the encoded body, not of what is written to the file
+		long contentLength = httpResponse.getHeaderValue("content-encoding") == null ? parseLong(httpResponse.getHeaderValue("content-length")) : -1;
+		long available = contentLength != -1 ? contentLength : inputStream.available();
+
+		try (FileOutputStream outputStream = new FileOutputStream(targetFile)) {
+			long downloaded = write(inputStream, outputStream.getChannel(), 0, available);
+			if (contentLength != -1 && downloaded != contentLength)
+				throw new IOException("Downloaded " + downloaded + " bytes of a " + contentLength + " bytes response");
+		}
+	}
+
+	private void writeRange(HttpResponse httpResponse, InputStream inputStream)
+		throws IOException {
+		// a full response here means the resource has changed since the download started, and the If-Range validator no longer matches
+		if (httpResponse.responseCode != 206)
+			throw new IOException("Expected a partial content response, got: " + httpResponse.responseCode);
+
+		// a different total length means the file has changed as well, even if the server ignored the If-Range validator
+		String contentRange = httpResponse.getHeaderValue("content-range");
+		String expected = "bytes " + position + "-" + (position + length - 1) + "/" + totalLength;
+		if (contentRange == null || !contentRange.trim().equals(expected))
+			throw new IOException("Expected content range: " + expected + ", got: " + contentRange);
+
+		long downloaded = write(inputStream, channel, position, length);
+		if (downloaded != length)
+			throw new IOException("Downloaded " + downloaded + " bytes of a " + length + " bytes range");
+	}
+
+	private long write(InputStream inputStream, FileChannel channel, long position, long available)
+		throws IOException {
+		byte[] array = BufferPool.Instance.acquire(BufferPool.Instance.getBufferSize());
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(array);
 			long downloaded = 0;
+			int length;
+			while ((length = inputStream.read(array)) != -1) {
+				// never write past a range, into the range of another listener
+				if (this.channel != null && downloaded + length > available)
+					throw new IOException("Received more than the " + available + " bytes of the range");
+
+				buffer.clear().limit(length);
+				while (buffer.hasRemaining()) {
+					position += channel.write(buffer, position);
+				}
 
-			while ((length = inputStream.read(buffer)) != -1) {
-				outputStream.write(buffer, 0, length);
-				cached += length;
 				downloaded += length;
 				onDownloadProgress(downloaded, available);
-				if (cached >= 1024 * 1024) {
-					outputStream.flush();
-					cached = 0;
-				}
 			}
-			outputStream.flush();
-		} catch (IOException e) {
-			throw new RuntimeException(e);
+
+			return downloaded;
 		} finally {
-			if (outputStream != null) {
-				try {
-					outputStream.close();
-				} catch (IOException ignore) {
-				}
-			}
+			BufferPool.Instance.release(array);
+		}
+	}
+
+	static long parseLong(String value) {
+		if (value == null)
+			return -1;
+
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return -1;
 		}
-		onDownloadCompleted();
 	}
 
 	protected abstract void onDownloadCompleted();
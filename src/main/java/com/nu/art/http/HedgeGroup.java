@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import com.nu.art.http.HttpModule.HttpTransaction;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The transactions racing for the response of a single hedged request.
+ *
+ * The first transaction to receive a response claims it and cancels the others, only its outcome reaches the listener. A transaction that fails
+ * without a response is ignored as long as another one is still racing.
+ */
+final class HedgeGroup {
+
+	final class Attempt
+		extends HttpResponseListener<InputStream, InputStream> {
+
+		HttpTransaction transaction;
+
+		private boolean failed;
+
+		private Attempt() {
+			super(InputStream.class, InputStream.class);
+		}
+
+		/**
+		 * @return false if another transaction of the group has already claimed the response.
+		 */
+		final boolean claim() {
+			return HedgeGroup.this.claim(this);
+		}
+
+		@Override
+		final void onSuccess(HttpResponse httpResponse)
+			throws IOException {
+			listener.onSuccess(httpResponse);
+		}
+
+		@Override
+		final void onError(HttpResponse httpResponse)
+			throws IOException {
+			if (shouldDispatchError(this))
+				listener.onError(httpResponse);
+		}
+
+		@Override
+		public void onSuccess(HttpResponse httpResponse, InputStream responseBody) {}
+
+		@Override
+		public void onError(HttpResponse httpResponse, InputStream errorBody) {}
+	}
+
+	private final HttpResponseListener listener;
+
+	private final ArrayList<Attempt> attempts = new ArrayList<>(2);
+
+	private Attempt winner;
+
+	private boolean completed;
+
+	private boolean cancelled;
+
+	HedgeGroup(HttpResponseListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @return A listener for a new transaction of the group, or null if the group has already completed or was cancelled.
+	 */
+	final synchronized Attempt newAttempt() {
+		if (completed || cancelled)
+			return null;
+
+		Attempt attempt = new Attempt();
+		attempts.add(attempt);
+		return attempt;
+	}
+
+	/**
+	 * Stops new transactions from joining the group.
+	 *
+	 * @return The transactions of the group that are still to be cancelled, their failures decide the outcome as usual.
+	 */
+	final synchronized List<HttpTransaction> cancel() {
+		cancelled = true;
+		ArrayList<HttpTransaction> transactions = new ArrayList<>(attempts.size() + 1);
+		if (winner != null)
+			transactions.add(winner.transaction);
+
+		for (Attempt attempt : attempts) {
+			if (attempt.transaction != null)
+				transactions.add(attempt.transaction);
+		}
+
+		return transactions;
+	}
+
+	private boolean claim(Attempt attempt) {
+		Attempt[] losers;
+		synchronized (this) {
+			if (completed)
+				return winner == attempt;
+
+			completed = true;
+			winner = attempt;
+			attempts.remove(attempt);
+			losers = attempts.toArray(new Attempt[attempts.size()]);
+			attempts.clear();
+		}
+
+		for (Attempt loser : losers) {
+			if (loser.transaction != null)
+				loser.transaction.cancel();
+		}
+
+		return true;
+	}
+
+	private synchronized boolean shouldDispatchError(Attempt attempt) {
+		if (winner == attempt)
+			return true;
+
+		if (completed)
+			return false;
+
+		attempt.failed = true;
+		for (Attempt other : attempts) {
+			if (!other.failed)
+				return false;
+		}
+
+		// every transaction failed without a response, the last failure is the outcome
+		completed = true;
+		return true;
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When a GET request has not received a response within the hedge delay, an identical request is sent alongside it. The first of the two to receive
+ * a response wins, and the other is cancelled and its connection closed.
+ *
+ * The delay is either fixed, or a percentile of the latency recorded for the host by a {@link HttpMetrics}, e.g. hedging at the 95th percentile
+ * costs about 5% extra requests and cuts the tail caused by occasional slow replicas. The hedges of the module are capped by
+ * {@link HttpModule#setHedgeBudget(RetryBudget)}.
+ */
+@SuppressWarnings( {
+	                   "unused",
+	                   "WeakerAccess"
+                   })
+public class HedgePolicy {
+
+	private static final int MinSamples = 20;
+
+	private long delay = 100;
+
+	private HttpMetrics metrics;
+
+	private double percentile;
+
+	private long minDelay;
+
+	/**
+	 * @param delay The time in ms to wait for a response before sending a hedge.
+	 */
+	public HedgePolicy setDelay(long delay) {
+		this.delay = delay;
+		this.metrics = null;
+		return this;
+	}
+
+	/**
+	 * @param metrics    The metrics holding the latency of the host
+	 * @param percentile The latency percentile to wait before sending a hedge, e.g. 95
+	 * @param minDelay   The min time in ms to wait, also used as the delay until the metrics hold enough samples of the host
+	 */
+	public HedgePolicy setPercentileDelay(HttpMetrics metrics, double percentile, long minDelay) {
+		this.metrics = metrics;
+		this.percentile = percentile;
+		this.minDelay = minDelay;
+		this.delay = minDelay;
+		return this;
+	}
+
+	/**
+	 * @param host The host as reported by {@link HttpTransactionMetrics#host}
+	 *
+	 * @return The time in ms to wait for a response before sending a hedge.
+	 */
+	public long getDelay(String host) {
+		HttpMetrics metrics = this.metrics;
+		if (metrics == null || host == null)
+			return delay;
+
+		LatencyHistogram latency = metrics.getLatencyByHost(host);
+		if (latency.getCount() < MinSamples)
+			return delay;
+
+		return Math.max(minDelay, TimeUnit.NANOSECONDS.toMillis(latency.getValueAtPercentile(percentile)));
+	}
+}
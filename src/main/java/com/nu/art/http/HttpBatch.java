@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Executes many similar requests, e.g. a lookup per id, with at most {@link #setParallelism(int) parallelism} of them in flight at once.
+ *
+ * The result of every request is streamed to the {@link BatchListener} as it completes, from the thread that executed it, and the future returned
+ * by {@link #execute(Collection)} completes with a {@link Summary} once all the requests have completed. Failed requests do not fail the batch, they
+ * are reported to the listener and counted in the summary. Cancelling the future cancels the requests in flight, and the requests not yet sent
+ * are never sent.
+ *
+ * A batch may be executed more than once, each execution with its own requests.
+ */
+@SuppressWarnings( {
+	                   "unused",
+	                   "WeakerAccess"
+                   })
+public final class HttpBatch<ResponseType> {
+
+	public interface BatchListener<ResponseType> {
+
+		/**
+		 * @param index The index of the request in the executed collection
+		 */
+		void onSuccess(int index, HttpResponse response, ResponseType responseBody);
+
+		/**
+		 * @param index The index of the request in the executed collection
+		 */
+		void onError(int index, Throwable e);
+	}
+
+	public static final class Summary {
+
+		public final int count;
+
+		public final int succeeded;
+
+		public final int failed;
+
+		/**
+		 * The time from the execution of the batch until its last request completed, in nanoseconds
+		 */
+		public final long elapsed;
+
+		/**
+		 * The time of each sent request, from its execution, queue wait included, until it completed, in nanoseconds
+		 */
+		public final LatencyHistogram latencies;
+
+		private Summary(int count, int succeeded, int failed, long elapsed, LatencyHistogram latencies) {
+			this.count = count;
+			this.succeeded = succeeded;
+			this.failed = failed;
+			this.elapsed = elapsed;
+			this.latencies = latencies;
+		}
+
+		@Override
+		public String toString() {
+			return "requests=" + count + ", succeeded=" + succeeded + ", failed=" + failed + ", elapsed=" + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms, latencies: " + latencies;
+		}
+	}
+
+	private final Class<ResponseType> responseType;
+
+	private int parallelism = 8;
+
+	private int deadline;
+
+	private BatchListener<ResponseType> listener;
+
+	public HttpBatch(Class<ResponseType> responseType) {
+		this.responseType = responseType;
+	}
+
+	/**
+	 * @param parallelism The max number of requests of the batch in flight at once, 8 by default. The execution pools of the requests still cap how
+	 *                    many of them actually execute concurrently.
+	 */
+	public HttpBatch<ResponseType> setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+		return this;
+	}
+
+	/**
+	 * @param deadline The time in ms from the execution of the batch, after which its requests are no longer of use. Each request is sent with the
+	 *                 time left as its own {@link IHttpRequest#setDeadline(int) deadline}, and requests not sent by then fail with a
+	 *                 {@link HttpDeadlineExceededException} without being sent. 0 (the default) for no deadline.
+	 */
+	public HttpBatch<ResponseType> setDeadline(int deadline) {
+		this.deadline = deadline;
+		return this;
+	}
+
+	public HttpBatch<ResponseType> setListener(BatchListener<ResponseType> listener) {
+		this.listener = listener;
+		return this;
+	}
+
+	/**
+	 * @return A future completed once all the requests have completed, cancelling it cancels the batch.
+	 */
+	public CompletableFuture<Summary> execute(Collection<? extends IHttpRequest> requests) {
+		Execution execution = new Execution(requests.toArray(new IHttpRequest[requests.size()]));
+		execution.dispatch();
+		return execution;
+	}
+
+	private final class Execution
+		extends CompletableFuture<Summary> {
+
+		private final IHttpRequest[] requests;
+
+		private final HttpResponseFuture[] futures;
+
+		private final BatchListener<ResponseType> listener = HttpBatch.this.listener;
+
+		private final int parallelism = HttpBatch.this.parallelism;
+
+		private final LatencyHistogram latencies = new LatencyHistogram();
+
+		private final long startedAt = System.nanoTime();
+
+		private final long deadline;
+
+		private int next;
+
+		private int inFlight;
+
+		private int completed;
+
+		private int succeeded;
+
+		private int failed;
+
+		private Execution(IHttpRequest[] requests) {
+			this.requests = requests;
+			futures = new HttpResponseFuture[requests.length];
+			deadline = HttpBatch.this.deadline > 0 ? startedAt + TimeUnit.MILLISECONDS.toNanos(HttpBatch.this.deadline) : FairQueue.NoDeadline;
+			if (requests.length == 0)
+				complete(new Summary(0, 0, 0, 0, latencies));
+		}
+
+		/**
+		 * Sends requests until the batch has as many in flight as its parallelism allows.
+		 */
+		private void dispatch() {
+			while (true) {
+				final int index;
+				synchronized (this) {
+					if (isDone() || next == requests.length || inFlight >= parallelism)
+						return;
+
+					index = next++;
+					inFlight++;
+				}
+
+				IHttpRequest request = requests[index];
+				if (deadline != FairQueue.NoDeadline) {
+					long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+					if (remaining <= 0) {
+						onCompleted(index, null, null, new HttpDeadlineExceededException("Deadline of " + HttpBatch.this.deadline + "ms of the batch passed before the request was sent"), false);
+						continue;
+					}
+
+					request.setDeadline((int) Math.min(Integer.MAX_VALUE, remaining));
+				}
+
+				final long sentAt = System.nanoTime();
+				final HttpResponseFuture<ResponseType> future = request.executeAsync(responseType);
+				synchronized (this) {
+					futures[index] = future;
+				}
+
+				future.whenComplete(new BiConsumer<ResponseType, Throwable>() {
+					@Override
+					public void accept(ResponseType responseBody, Throwable e) {
+						latencies.record(System.nanoTime() - sentAt);
+						onCompleted(index, future.getResponse(), responseBody, e, true);
+					}
+				});
+			}
+		}
+
+		private void onCompleted(int index, HttpResponse response, ResponseType responseBody, Throwable e, boolean sent) {
+			if (e instanceof CompletionException && e.getCause() != null)
+				e = e.getCause();
+
+			try {
+				if (listener != null) {
+					if (e == null)
+						listener.onSuccess(index, response, responseBody);
+					else
+						listener.onError(index, e);
+				}
+			} finally {
+				Summary summary = null;
+				synchronized (this) {
+					futures[index] = null;
+					if (e == null)
+						succeeded++;
+					else
+						failed++;
+
+					inFlight--;
+					if (++completed == requests.length)
+						summary = new Summary(requests.length, succeeded, failed, System.nanoTime() - startedAt, latencies);
+				}
+
+				// a request that was never sent completes within the dispatching loop, which goes on by itself
+				if (summary != null)
+					complete(summary);
+				else if (sent)
+					dispatch();
+			}
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (!cancelled)
+				return false;
+
+			HttpResponseFuture[] futures;
+			synchronized (this) {
+				futures = this.futures.clone();
+			}
+
+			for (HttpResponseFuture future : futures) {
+				if (future != null)
+					future.cancel(mayInterruptIfRunning);
+			}
+
+			return true;
+		}
+	}
+}
@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+/**
+ * Storage backing the {@link HttpResponseCache}, implementations must be thread safe.
+ */
+public interface HttpCacheStore {
+
+	CachedResponse get(String key);
+
+	void put(String key, CachedResponse response);
+
+	void remove(String key);
+
+	void clear();
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a transaction was cancelled before it completed.
+ */
+public class HttpCancelledException
+	extends IOException {
+
+	public HttpCancelledException(String message) {
+		super(message);
+	}
+
+	public HttpCancelledException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
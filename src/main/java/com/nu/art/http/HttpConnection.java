@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single connected hop of an {@link HttpModule.HttpTransaction}, as opened by an {@link HttpTransport}.
+ *
+ * Every call may block the calling thread on the network: the body is written to {@link #getOutputStream()}, {@link #getResponseCode()} waits for
+ * the response, and the response body is read from {@link #getInputStream()} or {@link #getErrorStream()}. {@link #disconnect()} is called from
+ * another thread to abort the hop, and must make those calls fail.
+ */
+public interface HttpConnection {
+
+	OutputStream getOutputStream()
+		throws IOException;
+
+	int getResponseCode()
+		throws IOException;
+
+	Map<String, List<String>> getHeaderFields();
+
+	InputStream getInputStream()
+		throws IOException;
+
+	InputStream getErrorStream();
+
+	/**
+	 * Called once the exchange completed and its streams were closed, allowing the transport to keep the underlying connection alive for reuse.
+	 */
+	void release();
+
+	void disconnect();
+}
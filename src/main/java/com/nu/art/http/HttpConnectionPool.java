@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decides whether the connection of a transaction is kept alive once its response was consumed, and counts how connections were handed back per
+ * destination host.
+ *
+ * The pool does not own sockets. With the {@link UrlConnectionTransport} they are owned by the JDK keep-alive cache: a connection kept alive is
+ * handed back to it by closing its streams, and whether the next transaction to the host reuses it is up to the JDK, which does not tell, so reuse
+ * is not reported. The JDK decides as well how long an idle connection is kept, by the keep-alive header of the server or 5 seconds by default.
+ *
+ * The number of concurrent requests to a host is capped by the {@link AdaptiveConcurrencyLimiter}, which rejects rather than blocks.
+ */
+@SuppressWarnings( {
+	                   "unused",
+	                   "WeakerAccess"
+                   })
+public final class HttpConnectionPool {
+
+	/**
+	 * The system property sizing the JDK keep-alive cache, read once by the JDK when it first keeps a connection alive
+	 */
+	public static final String Property_MaxConnections = "http.maxConnections";
+
+	public static final class HostStatistics {
+
+		public final String host;
+
+		/**
+		 * Connections held by transactions, from before they connect until their response is consumed
+		 */
+		public final int inUse;
+
+		/**
+		 * Connections handed back to the transport to be kept alive
+		 */
+		public final long keptAlive;
+
+		/**
+		 * Connections closed once used, as keep-alive is disabled or the exchange failed
+		 */
+		public final long disconnected;
+
+		private HostStatistics(HostCounters counters) {
+			host = counters.host;
+			inUse = counters.inUse;
+			keptAlive = counters.keptAlive;
+			disconnected = counters.disconnected;
+		}
+
+		@Override
+		public String toString() {
+			return host + ": in-use=" + inUse + ", kept-alive=" + keptAlive + ", disconnected=" + disconnected;
+		}
+	}
+
+	/**
+	 * The connection of a transaction, from before it connects until its response is fully consumed.
+	 */
+	final class Lease {
+
+		private final HostCounters counters;
+
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		HttpConnection connection;
+
+		private Lease(HostCounters counters) {
+			this.counters = counters;
+		}
+
+		/**
+		 * @param reusable whether the connection is in a state that allows it to be kept alive, i.e. the exchange was not interrupted by an I/O error.
+		 */
+		final void release(boolean reusable) {
+			if (!released.compareAndSet(false, true))
+				return;
+
+			boolean keepAlive = reusable && HttpConnectionPool.this.keepAlive;
+			if (connection != null) {
+				if (keepAlive)
+					connection.release();
+				else
+					connection.disconnect();
+			}
+
+			synchronized (counters) {
+				counters.inUse--;
+				if (connection == null)
+					return;
+
+				if (keepAlive)
+					counters.keptAlive++;
+				else
+					counters.disconnected++;
+			}
+		}
+	}
+
+	private static final class HostCounters {
+
+		final String host;
+
+		int inUse;
+
+		long keptAlive;
+
+		long disconnected;
+
+		HostCounters(String host) {
+			this.host = host;
+		}
+	}
+
+	private final ConcurrentHashMap<String, HostCounters> hosts = new ConcurrentHashMap<>();
+
+	private volatile boolean keepAlive = true;
+
+	HttpConnectionPool() {}
+
+	/**
+	 * @param keepAlive false to close every connection once its response was consumed, true by default.
+	 */
+	public HttpConnectionPool setKeepAlive(boolean keepAlive) {
+		this.keepAlive = keepAlive;
+		return this;
+	}
+
+	/**
+	 * Sets the {@link #Property_MaxConnections} system property, the max number of idle connections the JDK keeps alive per destination, 5 by
+	 * default. The property is process wide and read by the JDK only once, so this must be called before the first connection is kept alive.
+	 *
+	 * @param maxIdleConnectionsPerHost The max number of idle connections kept alive per host, larger than 0.
+	 */
+	public HttpConnectionPool setMaxIdleConnectionsPerHost(int maxIdleConnectionsPerHost) {
+		if (maxIdleConnectionsPerHost <= 0)
+			throw new IllegalArgumentException("max idle connections per host must be larger than 0: " + maxIdleConnectionsPerHost);
+
+		System.setProperty(Property_MaxConnections, String.valueOf(maxIdleConnectionsPerHost));
+		return this;
+	}
+
+	public Map<String, HostStatistics> getStatistics() {
+		HashMap<String, HostStatistics> statistics = new HashMap<>();
+		for (HostCounters counters : hosts.values()) {
+			synchronized (counters) {
+				statistics.put(counters.host, new HostStatistics(counters));
+			}
+		}
+
+		return statistics;
+	}
+
+	final Lease acquire(URL url) {
+		HostCounters counters = getOrCreateCounters(url);
+		synchronized (counters) {
+			counters.inUse++;
+		}
+
+		return new Lease(counters);
+	}
+
+	private HostCounters getOrCreateCounters(URL url) {
+		int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+		String host = url.getProtocol() + "://" + url.getHost() + ":" + port;
+
+		HostCounters counters = hosts.get(host);
+		if (counters != null)
+			return counters;
+
+		HostCounters newCounters = new HostCounters(host);
+		counters = hosts.putIfAbsent(host, newCounters);
+		return counters != null ? counters : newCounters;
+	}
+}
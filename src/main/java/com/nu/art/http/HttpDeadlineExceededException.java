@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the deadline of a request has passed before it could be completed.
+ */
+public class HttpDeadlineExceededException
+	extends IOException {
+
+	public HttpDeadlineExceededException(String message) {
+		super(message);
+	}
+
+	public HttpDeadlineExceededException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
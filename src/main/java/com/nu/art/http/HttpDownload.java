@@ -0,0 +1,536 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import com.nu.art.core.interfaces.Getter;
+import com.nu.art.http.consts.HttpMethod;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Downloads a large file as HTTP range segments fetched in parallel, each written at its position in the preallocated target file.
+ *
+ * The completed segments are recorded in a <i>.parts</i> file next to the target, so a download that failed or was cancelled resumes from where it
+ * stopped once started again, as long as the remote file is unchanged: its length must match, and every segment is requested with its ETag (or its
+ * Last-Modified date) as the If-Range validator, and must come back with the Content-Range of exactly that segment of a file of that length. The
+ * segment map is deleted once every segment was downloaded in full.
+ *
+ * A server that does not declare range support, or a file smaller than a single segment, is downloaded as a single stream.
+ */
+@SuppressWarnings( {
+	                   "unused",
+	                   "WeakerAccess"
+                   })
+public final class HttpDownload {
+
+	public interface OnProgressListener {
+
+		/**
+		 * Called whenever a segment completes.
+		 */
+		void onProgress(long downloaded, long length);
+	}
+
+	private static final String PartsExtension = ".parts";
+
+	private final Getter<IHttpRequest> requestFactory;
+
+	private final String url;
+
+	private final File targetFile;
+
+	private final File partsFile;
+
+	private long segmentSize = 8 * 1024 * 1024;
+
+	private int parallelism = 4;
+
+	private int maxSegmentAttempts = 3;
+
+	private OnProgressListener progressListener;
+
+	/**
+	 * @param requestFactory Creates the requests of the download, e.g. {@code createRequest} of a transaction
+	 */
+	public HttpDownload(Getter<IHttpRequest> requestFactory, String url, File targetFile) {
+		this.requestFactory = requestFactory;
+		this.url = url;
+		this.targetFile = targetFile;
+		this.partsFile = new File(targetFile.getPath() + PartsExtension);
+	}
+
+	/**
+	 * @param segmentSize The length of each range request, 8MB by default
+	 */
+	public HttpDownload setSegmentSize(long segmentSize) {
+		this.segmentSize = Math.max(64 * 1024, segmentSize);
+		return this;
+	}
+
+	/**
+	 * @param parallelism The max number of segments downloaded at once, 4 by default. The execution pool of the requests still caps how many of
+	 *                    them actually execute concurrently.
+	 */
+	public HttpDownload setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+		return this;
+	}
+
+	/**
+	 * @param maxSegmentAttempts The number of times a segment is requested before the download fails, 3 by default.
+	 */
+	public HttpDownload setMaxSegmentAttempts(int maxSegmentAttempts) {
+		this.maxSegmentAttempts = Math.max(1, maxSegmentAttempts);
+		return this;
+	}
+
+	public HttpDownload setProgressListener(OnProgressListener progressListener) {
+		this.progressListener = progressListener;
+		return this;
+	}
+
+	/**
+	 * Starts, or resumes, the download.
+	 *
+	 * @return A future completed with the target file once it is downloaded and verified, cancelling it stops the download and keeps the segment map
+	 * 	to resume from.
+	 */
+	public CompletableFuture<File> start() {
+		Execution execution = new Execution();
+		execution.probe();
+		return execution;
+	}
+
+	private IHttpRequest createRequest(HttpMethod method) {
+		IHttpRequest request = requestFactory.get().setUrl(url).setMethod(method).setUseCache(false);
+
+		// a range of an encoded response is a range of the encoded bytes
+		((HttpRequest) request).setHeader("accept-encoding", "identity");
+		return request;
+	}
+
+	/**
+	 * The persisted state of a segmented download.
+	 */
+	private static final class SegmentMap {
+
+		final String validator;
+
+		final long length;
+
+		final long segmentSize;
+
+		final BitSet completed;
+
+		SegmentMap(String validator, long length, long segmentSize, BitSet completed) {
+			this.validator = validator;
+			this.length = length;
+			this.segmentSize = segmentSize;
+			this.completed = completed;
+		}
+
+		int getSegmentCount() {
+			return (int) ((length + segmentSize - 1) / segmentSize);
+		}
+
+		long getCompletedLength() {
+			long completedLength = 0;
+			for (int index = completed.nextSetBit(0); index >= 0; index = completed.nextSetBit(index + 1)) {
+				completedLength += Math.min(segmentSize, length - index * segmentSize);
+			}
+
+			return completedLength;
+		}
+
+		static SegmentMap load(File partsFile) {
+			if (!partsFile.exists())
+				return null;
+
+			try {
+				HashMap<String, String> values = new HashMap<>();
+				try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(partsFile), StandardCharsets.UTF_8))) {
+					for (String line; (line = reader.readLine()) != null; ) {
+						int separator = line.indexOf('=');
+						if (separator != -1)
+							values.put(line.substring(0, separator), line.substring(separator + 1));
+					}
+				}
+
+				BitSet completed = new BitSet();
+				String completedSegments = values.get("completed");
+				if (completedSegments != null && completedSegments.length() > 0)
+					for (String index : completedSegments.split(",")) {
+						completed.set(Integer.parseInt(index));
+					}
+
+				String validator = values.get("validator");
+				return new SegmentMap(validator == null || validator.isEmpty() ? null : validator, Long.parseLong(values.get("length")), Long.parseLong(values.get("segment-size")), completed);
+			} catch (Exception e) {
+				// a corrupted map only means starting over
+				return null;
+			}
+		}
+
+		/**
+		 * Replaces the map by renaming a complete copy over it, a crash never leaves a partially written map behind.
+		 */
+		void save(File partsFile)
+			throws IOException {
+			StringBuilder content = new StringBuilder();
+			content.append("validator=").append(validator != null ? validator : "").append('\n');
+			content.append("length=").append(length).append('\n');
+			content.append("segment-size=").append(segmentSize).append('\n');
+			content.append("completed=");
+			for (int index = completed.nextSetBit(0); index >= 0; index = completed.nextSetBit(index + 1)) {
+				if (content.charAt(content.length() - 1) != '=')
+					content.append(',');
+				content.append(index);
+			}
+			content.append('\n');
+
+			File tempFile = new File(partsFile.getPath() + ".tmp");
+			try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+				outputStream.write(content.toString().getBytes(StandardCharsets.UTF_8));
+				outputStream.getFD().sync();
+			}
+
+			if (tempFile.renameTo(partsFile))
+				return;
+
+			// renaming over an existing file fails on some file systems
+			partsFile.delete();
+			if (!tempFile.renameTo(partsFile))
+				throw new IOException("Failed to save the segment map: " + partsFile);
+		}
+	}
+
+	private final class Segment {
+
+		final int index;
+
+		final long position;
+
+		final long length;
+
+		int attempts;
+
+		Segment(int index, long position, long length) {
+			this.index = index;
+			this.position = position;
+			this.length = length;
+		}
+	}
+
+	private final class Execution
+		extends CompletableFuture<File> {
+
+		private final int parallelism = HttpDownload.this.parallelism;
+
+		private final int maxSegmentAttempts = HttpDownload.this.maxSegmentAttempts;
+
+		private final OnProgressListener progressListener = HttpDownload.this.progressListener;
+
+		private final ArrayDeque<Segment> pending = new ArrayDeque<>();
+
+		private final HashMap<Segment, HttpRequestHandle> inFlight = new HashMap<>();
+
+		/**
+		 * The request in flight other than the segments, i.e. the probe or the single stream download
+		 */
+		private HttpRequestHandle request;
+
+		private SegmentMap segmentMap;
+
+		private FileChannel channel;
+
+		private long downloaded;
+
+		private void probe() {
+			// only the headers are of interest, the body is not read
+			HttpRequestHandle handle = createRequest(HttpMethod.Head).execute(new HttpResponseListener<InputStream, String>(InputStream.class, String.class) {
+				@Override
+				public void onSuccess(HttpResponse httpResponse, InputStream responseBody) {
+					try {
+						onProbed(httpResponse);
+					} catch (Throwable e) {
+						fail(e);
+					}
+				}
+
+				@Override
+				public void onError(HttpResponse httpResponse, String errorBody) {
+					fail(httpResponse.exception != null ? httpResponse.exception : new HttpException(httpResponse, errorBody));
+				}
+			});
+
+			register(handle);
+		}
+
+		private void onProbed(HttpResponse httpResponse)
+			throws IOException {
+			long length = FileResponseListener.parseLong(httpResponse.getHeaderValue("content-length"));
+			String acceptRanges = httpResponse.getHeaderValue("accept-ranges");
+			if (length <= segmentSize || acceptRanges == null || !acceptRanges.toLowerCase().contains("bytes")) {
+				downloadStream();
+				return;
+			}
+
+			// only a strong validator identifies the exact bytes of the file, which is what If-Range requires
+			String validator = httpResponse.getHeaderValue("etag");
+			if (validator == null || validator.startsWith("W/"))
+				validator = httpResponse.getHeaderValue("last-modified");
+
+			SegmentMap segmentMap = SegmentMap.load(partsFile);
+			boolean resume = segmentMap != null && segmentMap.length == length && segmentMap.validator != null && segmentMap.validator.equals(validator) && targetFile.length() == length;
+			if (!resume)
+				segmentMap = new SegmentMap(validator, length, segmentSize, new BitSet());
+
+			synchronized (this) {
+				if (isDone())
+					return;
+
+				this.segmentMap = segmentMap;
+				RandomAccessFile file = new RandomAccessFile(targetFile, "rw");
+				// closing the channel closes the file, which stop() does should anything below fail
+				channel = file.getChannel();
+				if (!resume)
+					file.setLength(0);
+
+				file.setLength(length);
+				segmentMap.save(partsFile);
+
+				downloaded = segmentMap.getCompletedLength();
+				for (int index = 0; index < segmentMap.getSegmentCount(); index++) {
+					if (segmentMap.completed.get(index))
+						continue;
+
+					long position = index * segmentMap.segmentSize;
+					pending.add(new Segment(index, position, Math.min(segmentMap.segmentSize, length - position)));
+				}
+			}
+
+			if (!dispatch())
+				onSegmentsCompleted();
+		}
+
+		/**
+		 * @return false if there was nothing left to download.
+		 */
+		private boolean dispatch() {
+			ArrayList<Segment> toExecute = new ArrayList<>();
+			FileChannel channel;
+			synchronized (this) {
+				if (pending.isEmpty() && inFlight.isEmpty())
+					return false;
+
+				while (!isDone() && inFlight.size() < parallelism && !pending.isEmpty()) {
+					Segment segment = pending.poll();
+					segment.attempts++;
+					inFlight.put(segment, null);
+					toExecute.add(segment);
+				}
+
+				channel = this.channel;
+			}
+
+			for (Segment segment : toExecute) {
+				execute(channel, segment);
+			}
+
+			return true;
+		}
+
+		private void execute(FileChannel channel, final Segment segment) {
+			IHttpRequest request = createRequest(HttpMethod.Get);
+			request.addHeader("range", "bytes=" + segment.position + "-" + (segment.position + segment.length - 1));
+			if (segmentMap.validator != null)
+				request.addHeader("if-range", segmentMap.validator);
+
+			HttpRequestHandle handle = request.execute(new FileResponseListener<String>(channel, segment.position, segment.length, segmentMap.length, String.class) {
+				@Override
+				protected void onDownloadCompleted() {
+					onSegmentCompleted(segment);
+				}
+
+				@Override
+				public void onError(HttpResponse httpResponse, String errorBody) {
+					onSegmentFailed(segment, httpResponse.exception != null ? httpResponse.exception : new HttpException(httpResponse, errorBody));
+				}
+			});
+
+			synchronized (this) {
+				if (!isDone()) {
+					// unless the segment has already completed
+					if (inFlight.containsKey(segment))
+						inFlight.put(segment, handle);
+					return;
+				}
+			}
+
+			// the download stopped while the request was being sent, stop() did not get to cancel it
+			handle.cancel();
+		}
+
+		private void onSegmentCompleted(Segment segment) {
+			long downloaded;
+			try {
+				synchronized (this) {
+					if (isDone())
+						return;
+
+					inFlight.remove(segment);
+					segmentMap.completed.set(segment.index);
+					downloaded = this.downloaded += segment.length;
+					segmentMap.save(partsFile);
+				}
+			} catch (IOException e) {
+				fail(e);
+				return;
+			}
+
+			if (progressListener != null)
+				progressListener.onProgress(downloaded, segmentMap.length);
+
+			if (!dispatch())
+				onSegmentsCompleted();
+		}
+
+		private void onSegmentFailed(Segment segment, Throwable e) {
+			synchronized (this) {
+				if (isDone())
+					return;
+
+				inFlight.remove(segment);
+				if (segment.attempts < maxSegmentAttempts)
+					pending.addFirst(segment);
+			}
+
+			if (segment.attempts >= maxSegmentAttempts)
+				fail(new IOException("Segment " + segment.index + " failed after " + segment.attempts + " attempts", e));
+			else
+				dispatch();
+		}
+
+		private void onSegmentsCompleted() {
+			int completedSegments;
+			long downloaded;
+			synchronized (this) {
+				if (isDone())
+					return;
+
+				closeChannel();
+				completedSegments = segmentMap.completed.cardinality();
+				downloaded = this.downloaded;
+			}
+
+			// every segment listener verified the length it wrote, the segments must add up to the file
+			if (completedSegments != segmentMap.getSegmentCount() || downloaded != segmentMap.length) {
+				fail(new IOException("Downloaded " + downloaded + " bytes in " + completedSegments + " of " + segmentMap.getSegmentCount() + " segments, expected " + segmentMap.length + " bytes"));
+				return;
+			}
+
+			partsFile.delete();
+			complete(targetFile);
+		}
+
+		private void downloadStream() {
+			partsFile.delete();
+			HttpRequestHandle handle = createRequest(HttpMethod.Get).execute(new FileResponseListener<String>(targetFile, String.class) {
+				@Override
+				protected void onDownloadCompleted() {
+					complete(targetFile);
+				}
+
+				@Override
+				public void onError(HttpResponse httpResponse, String errorBody) {
+					fail(httpResponse.exception != null ? httpResponse.exception : new HttpException(httpResponse, errorBody));
+				}
+			});
+
+			register(handle);
+		}
+
+		/**
+		 * Keeps the probe or the single stream request to be cancelled by {@link #stop()}, or cancels it if the download has already stopped.
+		 */
+		private void register(HttpRequestHandle handle) {
+			synchronized (this) {
+				if (!isDone()) {
+					request = handle;
+					return;
+				}
+			}
+
+			handle.cancel();
+		}
+
+		private void fail(Throwable e) {
+			if (completeExceptionally(e))
+				stop();
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled)
+				stop();
+
+			return cancelled;
+		}
+
+		/**
+		 * Cancels whatever is in flight, the segment map is kept to resume from.
+		 */
+		private void stop() {
+			List<HttpRequestHandle> handles = new ArrayList<>();
+			synchronized (this) {
+				if (request != null)
+					handles.add(request);
+
+				for (HttpRequestHandle handle : inFlight.values()) {
+					if (handle != null)
+						handles.add(handle);
+				}
+
+				inFlight.clear();
+				pending.clear();
+				closeChannel();
+			}
+
+			for (HttpRequestHandle handle : handles) {
+				handle.cancel();
+			}
+		}
+
+		private void closeChannel() {
+			if (channel == null)
+				return;
+
+			try {
+				channel.close();
+			} catch (IOException ignore) {
+			}
+			channel = null;
+		}
+	}
+}
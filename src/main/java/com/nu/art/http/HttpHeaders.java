@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A compact, ordered, multi-valued header store: name/value pairs kept in a single flat array, with case-insensitive lookups.
+ *
+ * Well known header names are interned into their lower-case constant when added, so lookups of those names mostly resolve by reference.
+ */
+@SuppressWarnings( {
+	                   "unused",
+	                   "WeakerAccess"
+                   })
+public final class HttpHeaders {
+
+	private static final String[] CommonNames = {
+		"accept",
+		"accept-encoding",
+		"accept-language",
+		"accept-ranges",
+		"age",
+		"authorization",
+		"cache-control",
+		"connection",
+		"content-disposition",
+		"content-encoding",
+		"content-language",
+		"content-length",
+		"content-range",
+		"content-type",
+		"cookie",
+		"date",
+		"etag",
+		"expires",
+		"host",
+		"if-modified-since",
+		"if-none-match",
+		"if-range",
+		"keep-alive",
+		"last-modified",
+		"location",
+		"pragma",
+		"range",
+		"retry-after",
+		"server",
+		"set-cookie",
+		"transfer-encoding",
+		"user-agent",
+		"vary",
+		"www-authenticate",
+		};
+
+	private String[] namesAndValues;
+
+	private int size;
+
+	public HttpHeaders() {
+		this(8);
+	}
+
+	public HttpHeaders(int capacity) {
+		namesAndValues = new String[Math.max(1, capacity) * 2];
+	}
+
+	public final int size() {
+		return size;
+	}
+
+	public final String getName(int index) {
+		return namesAndValues[index * 2];
+	}
+
+	public final String getValue(int index) {
+		return namesAndValues[index * 2 + 1];
+	}
+
+	public final HttpHeaders add(String name, String value) {
+		if (size * 2 == namesAndValues.length)
+			namesAndValues = Arrays.copyOf(namesAndValues, namesAndValues.length * 2);
+
+		namesAndValues[size * 2] = intern(name);
+		namesAndValues[size * 2 + 1] = value;
+		size++;
+		return this;
+	}
+
+	/**
+	 * Replaces all the values of the given header with the given value.
+	 */
+	public final HttpHeaders set(String name, String value) {
+		remove(name);
+		return add(name, value);
+	}
+
+	public final HttpHeaders remove(String name) {
+		int target = 0;
+		for (int i = 0; i < size; i++) {
+			if (matches(namesAndValues[i * 2], name))
+				continue;
+
+			namesAndValues[target * 2] = namesAndValues[i * 2];
+			namesAndValues[target * 2 + 1] = namesAndValues[i * 2 + 1];
+			target++;
+		}
+
+		Arrays.fill(namesAndValues, target * 2, size * 2, null);
+		size = target;
+		return this;
+	}
+
+	public final boolean contains(String name) {
+		return indexOf(name) != -1;
+	}
+
+	/**
+	 * @return The first value of the given header, or null if absent.
+	 */
+	public final String get(String name) {
+		int index = indexOf(name);
+		return index == -1 ? null : namesAndValues[index * 2 + 1];
+	}
+
+	public final List<String> getAll(String name) {
+		ArrayList<String> values = new ArrayList<>(2);
+		for (int i = 0; i < size; i++) {
+			if (matches(namesAndValues[i * 2], name))
+				values.add(namesAndValues[i * 2 + 1]);
+		}
+
+		return values;
+	}
+
+	/**
+	 * @return A mutable map of the headers, with lower-cased names.
+	 */
+	public final Map<String, List<String>> toMultimap() {
+		HashMap<String, List<String>> map = new HashMap<>();
+		for (int i = 0; i < size; i++) {
+			String name = namesAndValues[i * 2].toLowerCase(Locale.ENGLISH);
+			List<String> values = map.get(name);
+			if (values == null)
+				map.put(name, values = new ArrayList<>(2));
+
+			values.add(namesAndValues[i * 2 + 1]);
+		}
+
+		return map;
+	}
+
+	public final HttpHeaders copy() {
+		HttpHeaders copy = new HttpHeaders(0);
+		copy.namesAndValues = Arrays.copyOf(namesAndValues, namesAndValues.length);
+		copy.size = size;
+		return copy;
+	}
+
+	private int indexOf(String name) {
+		for (int i = 0; i < size; i++) {
+			if (matches(namesAndValues[i * 2], name))
+				return i;
+		}
+
+		return -1;
+	}
+
+	private static boolean matches(String headerName, String name) {
+		return headerName == name || headerName.equalsIgnoreCase(name);
+	}
+
+	static String intern(String name) {
+		for (String commonName : CommonNames) {
+			if (commonName.length() == name.length() && commonName.equalsIgnoreCase(name))
+				return commonName;
+		}
+
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			builder.append(namesAndValues[i * 2]).append(": ").append(namesAndValues[i * 2 + 1]).append('\n');
+		}
+
+		return builder.toString();
+	}
+}
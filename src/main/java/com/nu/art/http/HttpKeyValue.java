@@ -19,6 +19,14 @@ public final class HttpKeyValue {
 		this.value = value;
 	}
 
+	public String getKey() {
+		return key;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
 	@Override
 	public String toString() {
 		return key + ":" + value;
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import com.nu.art.http.consts.HttpMethod;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link HttpMetricsListener} aggregating the execution latency of transactions into histograms per host, method, tag and response code, and the
+ * queue wait per execution pool, and tracking the state of the circuits of the module.
+ *
+ * Register it with {@link HttpModule#addMetricsListener(HttpMetricsListener)}, all values are in nanoseconds.
+ */
+@SuppressWarnings( {
+	                   "unused",
+	                   "WeakerAccess"
+                   })
+public final class HttpMetrics
+	implements HttpMetricsListener {
+
+	private static final String NoTag = "";
+
+	private static final String NoHost = "";
+
+	private final LatencyHistogram all = new LatencyHistogram();
+
+	private final ConcurrentHashMap<String, LatencyHistogram> byHost = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<HttpMethod, LatencyHistogram> byMethod = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<String, LatencyHistogram> byTag = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<Integer, LatencyHistogram> byResponseCode = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<String, LatencyHistogram> queueWaitByPool = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<String, CircuitBreaker.State> circuitStates = new ConcurrentHashMap<>();
+
+	private final AtomicLong circuitOpenings = new AtomicLong();
+
+	private final AtomicLong hedges = new AtomicLong();
+
+	private final AtomicLong hedgeWins = new AtomicLong();
+
+	@Override
+	public void onTransactionCompleted(HttpTransactionMetrics metrics) {
+		long latency = metrics.executionInterval;
+		all.record(latency);
+		getOrCreate(byHost, metrics.host != null ? metrics.host : NoHost).record(latency);
+		getOrCreate(byMethod, metrics.method).record(latency);
+		getOrCreate(byTag, metrics.tag != null ? metrics.tag : NoTag).record(latency);
+		getOrCreate(byResponseCode, metrics.responseCode).record(latency);
+		getOrCreate(queueWaitByPool, metrics.executionPool).record(metrics.queueWaitInterval);
+		if (!metrics.hedge)
+			return;
+
+		hedges.incrementAndGet();
+		if (metrics.error == null)
+			hedgeWins.incrementAndGet();
+	}
+
+	@Override
+	public void onCircuitStateChanged(String key, CircuitBreaker.State from, CircuitBreaker.State to) {
+		circuitStates.put(key, to);
+		if (to == CircuitBreaker.State.Open)
+			circuitOpenings.incrementAndGet();
+	}
+
+	public LatencyHistogram getLatency() {
+		return all;
+	}
+
+	public LatencyHistogram getLatencyByHost(String host) {
+		return getOrCreate(byHost, host);
+	}
+
+	public LatencyHistogram getLatencyByMethod(HttpMethod method) {
+		return getOrCreate(byMethod, method);
+	}
+
+	public LatencyHistogram getLatencyByTag(String tag) {
+		return getOrCreate(byTag, tag != null ? tag : NoTag);
+	}
+
+	public LatencyHistogram getLatencyByResponseCode(int responseCode) {
+		return getOrCreate(byResponseCode, responseCode);
+	}
+
+	public LatencyHistogram getQueueWait(String executionPool) {
+		return getOrCreate(queueWaitByPool, executionPool);
+	}
+
+	public Map<String, LatencyHistogram> getLatencyByHost() {
+		return new HashMap<>(byHost);
+	}
+
+	public Map<String, LatencyHistogram> getLatencyByTag() {
+		return new HashMap<>(byTag);
+	}
+
+	public Map<Integer, LatencyHistogram> getLatencyByResponseCode() {
+		return new HashMap<>(byResponseCode);
+	}
+
+	public Map<String, LatencyHistogram> getQueueWaitByPool() {
+		return new HashMap<>(queueWaitByPool);
+	}
+
+	/**
+	 * @return The last known state of every circuit that changed its state.
+	 */
+	public Map<String, CircuitBreaker.State> getCircuitStates() {
+		return new HashMap<>(circuitStates);
+	}
+
+	/**
+	 * @return The number of hedges sent.
+	 */
+	public long getHedges() {
+		return hedges.get();
+	}
+
+	/**
+	 * @return The number of hedges that received a response before the transaction they hedged, and completed successfully.
+	 */
+	public long getHedgeWins() {
+		return hedgeWins.get();
+	}
+
+	/**
+	 * @return The number of times any circuit has opened.
+	 */
+	public long getCircuitOpenings() {
+		return circuitOpenings.get();
+	}
+
+	private static <Key> LatencyHistogram getOrCreate(ConcurrentHashMap<Key, LatencyHistogram> histograms, Key key) {
+		LatencyHistogram histogram = histograms.get(key);
+		if (histogram != null)
+			return histogram;
+
+		LatencyHistogram newHistogram = new LatencyHistogram();
+		histogram = histograms.putIfAbsent(key, newHistogram);
+		return histogram != null ? histogram : newHistogram;
+	}
+}
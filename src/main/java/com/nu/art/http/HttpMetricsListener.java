@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+/**
+ * Receives the timing record of every transaction executed by the {@link HttpModule}, called on the executing thread so implementations must be
+ * fast and thread safe.
+ */
+public interface HttpMetricsListener {
+
+	void onTransactionCompleted(HttpTransactionMetrics metrics);
+
+	/**
+	 * Called when a circuit of the {@link CircuitBreaker} of the module changes its state.
+	 */
+	default void onCircuitStateChanged(String key, CircuitBreaker.State from, CircuitBreaker.State to) {}
+}
@@ -13,24 +13,39 @@ import com.nu.art.belog.consts.LogLevel;
 import com.nu.art.core.generics.Processor;
 import com.nu.art.core.interfaces.Getter;
 import com.nu.art.core.interfaces.ILogger;
-import com.nu.art.core.tools.ArrayTools;
-import com.nu.art.core.tools.StreamTools;
 import com.nu.art.core.utils.PoolQueue;
+import com.nu.art.http.BufferPool.PooledOutputStream;
+import com.nu.art.http.consts.HttpPriority;
 import com.nu.art.modular.core.Module;
 import com.nu.art.modular.core.ModuleManager;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
@@ -50,13 +65,20 @@ public final class HttpModule
 	public interface OnRequestErrorListener {
 
 		void onError(HttpTransaction item, Throwable e);
+
+		/**
+		 * Called when a circuit of the {@link CircuitBreaker} of the module changes its state, e.g. opens as its endpoint keeps failing.
+		 */
+		default void onCircuitStateChanged(String key, CircuitBreaker.State from, CircuitBreaker.State to) {}
 	}
 
 	public static class ExecutionPool {
 
 		public String key;
 		public int numberOfThreads;
+		public boolean virtualThreads;
 		private Processor<Thread> threadInitiator;
+		private final ConcurrentHashMap<String, Integer> tagWeights = new ConcurrentHashMap<>();
 
 		public ExecutionPool(String key, int numberOfThreads) {
 			this.key = key;
@@ -68,6 +90,29 @@ public final class HttpModule
 			return this;
 		}
 
+		/**
+		 * When enabled every transaction runs on its own (virtual, when the JVM supports it) thread, and {@link #numberOfThreads} becomes the maximum
+		 * number of transactions executing concurrently rather than the size of a fixed thread pool.
+		 */
+		public ExecutionPool setVirtualThreads(boolean virtualThreads) {
+			this.virtualThreads = virtualThreads;
+			return this;
+		}
+
+		/**
+		 * Requests waiting in this pool are served fairly across their tags, a tag with twice the weight gets twice the share of the pool, 1 by
+		 * default.
+		 */
+		public ExecutionPool setTagWeight(String tag, int weight) {
+			tagWeights.put(tag, Math.max(1, weight));
+			return this;
+		}
+
+		final int getTagWeight(String tag) {
+			Integer weight = tag == null ? null : tagWeights.get(tag);
+			return weight == null ? 1 : weight;
+		}
+
 		@Override
 		public boolean equals(Object o) {
 			if (this == o)
@@ -88,32 +133,59 @@ public final class HttpModule
 
 	public ExecutionPool DefaultExecutionPool = new ExecutionPool("http-thread", 5);
 	public static final HttpResponseListener EmptyResponseListener = new EmptyResponseListener();
+	private static final long UploadProgressInterval = TimeUnit.MILLISECONDS.toNanos(100);
 	private LogLevel defaultLogLevel = LogLevel.Verbose;
 
 	/**
-	 * PoolQueue holding the requests to be executed by its thread pool
+	 * Executors holding the requests to be executed, per execution pool
 	 */
-	private HashMap<String, HttpPoolQueue> queues = new HashMap<>();
+	private ConcurrentHashMap<String, TransactionExecutor> queues = new ConcurrentHashMap<>();
 	private OnRequestErrorListener generalErrorListener;
-
-	private HttpModule() { }
+	private HttpTransport transport = UrlConnectionTransport.Instance;
+	private final HttpConnectionPool connectionPool = new HttpConnectionPool();
+	private HttpResponseCache responseCache;
+	private AdaptiveConcurrencyLimiter concurrencyLimiter;
+	private CircuitBreaker circuitBreaker;
+	private RetryPolicy defaultRetryPolicy;
+	private RetryBudget retryBudget = new RetryBudget();
+	private RetryBudget hedgeBudget = new RetryBudget().setRatio(0.05).setMinPerSecond(1);
+	private ScheduledExecutorService scheduler;
+	private final HashMap<String, CoalescedResponseListener> inFlight = new HashMap<>();
+	private final CopyOnWriteArrayList<HttpMetricsListener> metricsListeners = new CopyOnWriteArrayList<>();
+	private volatile Map<String, ResponseDecoder> responseDecoders;
+	private volatile String acceptEncoding;
+
+	private HttpModule() {
+		LinkedHashMap<String, ResponseDecoder> responseDecoders = new LinkedHashMap<>();
+		responseDecoders.put(ResponseDecoder.GZip.getName(), ResponseDecoder.GZip);
+		responseDecoders.put(ResponseDecoder.Deflate.getName(), ResponseDecoder.Deflate);
+		setResponseDecoders(responseDecoders);
+	}
 
 	public void disposeExecutionQueue(ExecutionPool pool) {
 		logInfo("disposing execution pool: " + pool.key);
-		HttpPoolQueue poolQueue = getOrCreateQueue(pool);
+		TransactionExecutor poolQueue = getOrCreateQueue(pool);
 		queues.remove(pool.key);
-		poolQueue.kill();
+		poolQueue.dispose();
 	}
 
-	private HttpPoolQueue getOrCreateQueue(ExecutionPool executionPool) {
+	private TransactionExecutor getOrCreateQueue(ExecutionPool executionPool) {
 		if (executionPool == null)
 			executionPool = DefaultExecutionPool;
 
-		HttpPoolQueue queue = queues.get(executionPool.key);
-		if (queue == null) {
-			queues.put(executionPool.key, queue = (HttpPoolQueue) new HttpPoolQueue().setThreadInitiator(executionPool.threadInitiator));
-			queue.createThreads(executionPool.key, executionPool.numberOfThreads);
+		TransactionExecutor queue = queues.get(executionPool.key);
+		if (queue != null)
+			return queue;
+
+		if (executionPool.virtualThreads) {
+			queue = new HttpVirtualThreadQueue(executionPool);
+		} else {
+			HttpPoolQueue poolQueue = (HttpPoolQueue) new HttpPoolQueue(executionPool).setThreadInitiator(executionPool.threadInitiator);
+			poolQueue.createThreads(executionPool.key, executionPool.numberOfThreads);
+			queue = poolQueue;
 		}
+
+		queues.put(executionPool.key, queue);
 		return queue;
 	}
 
@@ -121,6 +193,120 @@ public final class HttpModule
 		this.generalErrorListener = generalErrorListener;
 	}
 
+	public void setTransport(HttpTransport transport) {
+		if (transport == null)
+			transport = UrlConnectionTransport.Instance;
+
+		this.transport = transport;
+	}
+
+	public HttpConnectionPool getConnectionPool() {
+		return connectionPool;
+	}
+
+	/**
+	 * @return The pool of the buffers request and response bodies are copied through, shared by all the requests of the module.
+	 */
+	public BufferPool getBufferPool() {
+		return BufferPool.Instance;
+	}
+
+	/**
+	 * @param responseCache The cache to serve GET requests from, null to disable caching.
+	 */
+	public void setResponseCache(HttpResponseCache responseCache) {
+		this.responseCache = responseCache;
+	}
+
+	public HttpResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	/**
+	 * @param concurrencyLimiter Limits the requests in flight per host, null to disable limiting.
+	 */
+	public void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+		this.concurrencyLimiter = concurrencyLimiter;
+	}
+
+	public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+
+	/**
+	 * @param circuitBreaker Fails requests to endpoints that keep failing without sending them, null to disable.
+	 */
+	public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+		if (this.circuitBreaker != null)
+			this.circuitBreaker.setListener(null);
+
+		this.circuitBreaker = circuitBreaker;
+		if (circuitBreaker != null)
+			circuitBreaker.setListener(this::onCircuitStateChanged);
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * @param defaultRetryPolicy The retry policy of requests that do not set their own, null (the default) for no retries.
+	 */
+	public void setDefaultRetryPolicy(RetryPolicy defaultRetryPolicy) {
+		this.defaultRetryPolicy = defaultRetryPolicy;
+	}
+
+	/**
+	 * @param retryBudget Caps the retries of all the requests of the module, null for no cap.
+	 */
+	public void setRetryBudget(RetryBudget retryBudget) {
+		this.retryBudget = retryBudget;
+	}
+
+	public RetryBudget getRetryBudget() {
+		return retryBudget;
+	}
+
+	/**
+	 * @param hedgeBudget Caps the hedges sent for requests with a {@link HedgePolicy}, null for no cap. By default a hedge may be sent for 5% of the
+	 *                    hedged requests.
+	 */
+	public void setHedgeBudget(RetryBudget hedgeBudget) {
+		this.hedgeBudget = hedgeBudget;
+	}
+
+	public RetryBudget getHedgeBudget() {
+		return hedgeBudget;
+	}
+
+	/**
+	 * Registers a decoder of response bodies, replacing the one registered for the same content-encoding. Requests created from then on send the
+	 * content-encodings of the registered decoders as their accept-encoding. gzip and deflate are registered by default.
+	 */
+	public synchronized void addResponseDecoder(ResponseDecoder decoder) {
+		LinkedHashMap<String, ResponseDecoder> responseDecoders = new LinkedHashMap<>(this.responseDecoders);
+		responseDecoders.put(decoder.getName(), decoder);
+		setResponseDecoders(responseDecoders);
+	}
+
+	public synchronized void removeResponseDecoder(String contentEncoding) {
+		LinkedHashMap<String, ResponseDecoder> responseDecoders = new LinkedHashMap<>(this.responseDecoders);
+		responseDecoders.remove(contentEncoding.toLowerCase());
+		setResponseDecoders(responseDecoders);
+	}
+
+	private void setResponseDecoders(LinkedHashMap<String, ResponseDecoder> responseDecoders) {
+		StringBuilder acceptEncoding = new StringBuilder();
+		for (String contentEncoding : responseDecoders.keySet()) {
+			if (acceptEncoding.length() > 0)
+				acceptEncoding.append(", ");
+			acceptEncoding.append(contentEncoding);
+		}
+
+		this.responseDecoders = responseDecoders;
+		this.acceptEncoding = acceptEncoding.length() > 0 ? acceptEncoding.toString() : "identity";
+	}
+
 	public void setDefaultLogLevel(LogLevel defaultLogLevel) {
 		this.defaultLogLevel = defaultLogLevel;
 	}
@@ -235,6 +421,7 @@ public final class HttpModule
 
 		protected IHttpRequest createRequest() {
 			HttpRequestIn httpRequest = new HttpRequestIn();
+			httpRequest.addHeader("accept-encoding", acceptEncoding);
 
 			for (String key : defaultHeaders.keySet()) // If exist, add default headers to all requests.
 				httpRequest.addHeader(key, defaultHeaders.get(key).get());
@@ -242,6 +429,20 @@ public final class HttpModule
 			return httpRequest;
 		}
 
+		/**
+		 * @return A batch to execute many requests created by {@link #createRequest()} with bounded parallelism.
+		 */
+		protected final <ResponseType> HttpBatch<ResponseType> createBatch(Class<ResponseType> responseType) {
+			return new HttpBatch<>(responseType);
+		}
+
+		/**
+		 * @return A segmented download of the given url into the target file, with requests created by {@link #createRequest()}.
+		 */
+		protected final HttpDownload createDownload(String url, File targetFile) {
+			return new HttpDownload(this::createRequest, url, targetFile);
+		}
+
 		protected final <Manager extends Module> Manager getModule(Class<Manager> moduleType) {
 			return HttpModule.this.getModule(moduleType);
 		}
@@ -260,23 +461,88 @@ public final class HttpModule
 
 	public class HttpTransaction {
 
-		private Logger logger = BeLogged.getInstance().getLogger(HttpModule.this);
+		private final LogLevel logLevel;
+		private Logger logger;
 
+		private long enqueuedAt = System.nanoTime();
+		private final long deadline;
+		private long startedAt;
+		private int attempt;
 		private HoopTiming hoop;
 		private HttpRequest request;
 		private HttpResponse response;
 		private HttpResponseListener responseListener;
+		private HedgeGroup.Attempt hedgeAttempt;
+		private boolean hedge;
+		private volatile boolean cancelled;
+		private volatile boolean deadlineExceeded;
+		/**
+		 * Whether the response was handed to the listener, from then on a failure may follow side effects of the listener and is not retried
+		 */
+		private boolean responseDelivered;
+		private HttpConnection connection;
+		/**
+		 * The location the last hop was redirected to, followed by this transaction alone as the request may be shared by hedges
+		 */
+		private String redirectUrl;
 
 		private HttpTransaction(HttpRequest request, HttpResponseListener responseListener) {
+			this(request, responseListener, getDeadline(request));
+			RetryBudget retryBudget = HttpModule.this.retryBudget;
+			if (retryBudget != null)
+				retryBudget.onRequest();
+		}
+
+		/**
+		 * A transaction of a hedged request, bound by the deadline of the request as a whole. The request earns its retry budget once, not per hedge.
+		 */
+		private HttpTransaction(HttpRequest request, HttpResponseListener responseListener, long deadline) {
 			super();
-			logger.setMinLogLevel(request.logLevel != null ? request.logLevel : defaultLogLevel);
+			logLevel = request.logLevel != null ? request.logLevel : defaultLogLevel;
+			this.deadline = deadline;
 			this.request = request;
 			this.responseListener = responseListener;
 		}
 
+		/**
+		 * A queued transaction is dropped once dequeued, a running one is aborted by closing its connection.
+		 */
+		final void cancel() {
+			cancel(false);
+		}
+
+		private void cancel(boolean deadlineExceeded) {
+			if (deadlineExceeded)
+				this.deadlineExceeded = true;
+
+			cancelled = true;
+			synchronized (this) {
+				if (connection != null)
+					connection.disconnect();
+			}
+		}
+
+		private IOException createCancelledException(Throwable cause) {
+			if (deadlineExceeded)
+				return new HttpDeadlineExceededException("Deadline of " + request.getDeadline() + "ms exceeded", cause);
+
+			return new HttpCancelledException("Transaction was cancelled", cause);
+		}
+
+		private boolean isPastDeadline() {
+			return deadline != FairQueue.NoDeadline && System.nanoTime() - deadline >= 0;
+		}
+
 		@SuppressWarnings("unchecked")
 		private boolean execute()
 			throws IOException {
+			// also stops a redirect or a retry once the deadline has passed
+			if (!cancelled && isPastDeadline())
+				cancel(true);
+
+			if (cancelled)
+				throw createCancelledException(null);
+
 			if (request.preExecutionProcessor != null)
 				request.preExecutionProcessor.process(request);
 
@@ -284,74 +550,177 @@ public final class HttpModule
 			hoop = new HoopTiming(originalHoop);
 			hoop.redirectHoop = originalHoop;
 
-			HttpURLConnection connection = null;
+			HttpConnection connection = null;
 			boolean redirect = false;
+			boolean reusable = false;
 			response = new HttpResponse();
-			InputStream inputStream = null;
+			RequestBody body = null;
+			HttpResponseCache cache = request.useCache ? responseCache : null;
+			CachedResponse cached = null;
+			CircuitBreaker.Permit circuitPermit = null;
+			AdaptiveConcurrencyLimiter.Permit permit = null;
+			Throwable error = null;
 			try {
-				inputStream = request._inputStream != null ? request._inputStream.get() : null;
-				connection = connect(inputStream);
-				request.printRequest(logger, hoop);
-				postBody(connection, inputStream);
+				URL url = composeURL();
+				if (cache != null)
+					cached = cache.lookup(request, url.toString());
+
+				if (cached != null && cache.isFresh(request, cached)) {
+					printRequest(null);
+					claimResponse();
+					processCachedResponse(cached);
+					return false;
+				}
+
+				long requestTime = System.currentTimeMillis();
+				if (circuitBreaker != null)
+					circuitPermit = circuitBreaker.acquire(url, request.tag);
+
+				if (concurrencyLimiter != null)
+					permit = concurrencyLimiter.acquire(url);
+
+				body = request.openBody();
+				// the request is shared by hedges and retries, each attempt sends the headers as they are when it connects
+				HttpHeaders headers = request.getHeaders();
+				if (body instanceof BodyEncoder.EncodedBody)
+					headers.set("content-encoding", ((BodyEncoder.EncodedBody) body).getContentEncoding());
+
+				if (cached != null && !cache.addValidators(headers, cached))
+					cached = null;
+
+				connection = connect(url, headers, body);
+				printRequest(headers);
+				postBody(connection, body);
 
 				waitForResponse(response, connection);
+				claimResponse();
 
-				if (processRedirect())
+				// the outcome is known once the response arrived, conclude it before the listener gets to start follow up requests
+				if (circuitPermit != null)
+					circuitPermit.onCompleted(response.responseCode >= 500 || response.responseCode == 429);
+
+				if (cached != null && response.responseCode == 304) {
+					reusable = true;
+					processCachedResponse(cache.onNotModified(cached, response, requestTime));
+					return false;
+				}
+
+				if (processRedirect()) {
+					reusable = true;
 					return redirect = true;
+				}
+
+				response.assertFailure(connection, responseDecoders);
 
-				response.assertFailure(connection);
+				if (cache != null)
+					cache.invalidate(request, url.toString());
 
-				processSuccess(connection);
+				processSuccess(connection, cache, url.toString(), requestTime);
+				reusable = true;
 			} catch (Throwable e) {
+				error = e;
 				if (connection == null)
-					request.printRequest(logger, hoop);
+					printRequest(null);
 
-				logger.logError("+-- Error: ", e);
+				reusable = e instanceof HttpException && !cancelled;
+				if (cancelled) {
+					if (isLoggable(LogLevel.Info))
+						getLogger().logInfo(deadlineExceeded ? "+-- Deadline exceeded" : "+-- Cancelled");
+
+					if (!(e instanceof HttpCancelledException || e instanceof HttpDeadlineExceededException))
+						throw createCancelledException(e);
+					throw e;
+				}
+
+				if (isLoggable(LogLevel.Error))
+					getLogger().logError("+-- Error: ", e);
 				throw e;
 			} finally {
-				response.printResponse(logger);
-				printTiming(logger, hoop, "");
-				if (!redirect)
-					logger.logVerbose("+-------------------------------------------------------------------------+");
+				int responseCode = response.responseCode;
+				boolean dropped = error != null && !(error instanceof HttpException) || responseCode >= 500 || responseCode == 429;
+				if (permit != null) {
+					if (cancelled)
+						permit.ignore();
+					else
+						permit.release(hoop.waitForServerInterval, dropped);
+				}
 
-				request.close(inputStream);
-				response.close();
+				if (circuitPermit != null) {
+					if (cancelled || error instanceof ConcurrencyLimitExceededException)
+						circuitPermit.ignore();
+					else
+						circuitPermit.onCompleted(dropped);
+				}
 
-				if (connection != null)
-					connection.disconnect();
+				if (isLoggable(LogLevel.Info) || response.hasFailed() && response.responseAsString != null && isLoggable(LogLevel.Error))
+					response.printResponse(getLogger(), logLevel);
+
+				if (isLoggable(LogLevel.Verbose)) {
+					printTiming(getLogger(), hoop, "");
+					if (!redirect)
+						getLogger().logVerbose("+-------------------------------------------------------------------------+");
+				}
+
+				synchronized (this) {
+					// the connection is released below, and may be reused by another transaction
+					this.connection = null;
+				}
+
+				request.close(body);
+				if (!response.isDetached()) {
+					response.close();
+
+					if (response.lease != null)
+						response.lease.release(reusable);
+				}
 			}
 			return false;
 		}
 
-		private void processSuccess(HttpURLConnection connection)
+		private void processSuccess(HttpConnection connection, HttpResponseCache cache, String url, long requestTime)
 			throws IOException {
-			long start = System.currentTimeMillis();
+			long start = System.nanoTime();
 
-			response.processSuccess(connection);
+			response.processSuccess(connection, responseDecoders);
+			if (cache != null && response.inputStream != null && cache.isCacheable(request, response))
+				response.inputStream = cache.record(request, url, response, requestTime);
+
+			responseDelivered = true;
 			responseListener.onSuccess(response);
 
-			hoop.downloadingAndProcessingInterval = System.currentTimeMillis() - start;
+			hoop.downloadingAndProcessingInterval = System.nanoTime() - start;
 		}
 
-		final void waitForResponse(HttpResponse response, HttpURLConnection connection)
+		private void processCachedResponse(CachedResponse cached)
 			throws IOException {
-			long start = System.currentTimeMillis();
+			long start = System.nanoTime();
 
-			response.responseCode = connection.getResponseCode();
-			response.headers = new HashMap<>(connection.getHeaderFields());
-			String[] keys = ArrayTools.asArray(response.headers.keySet(), String.class);
+			hoop.fromCache = true;
+			response.setFromCache(cached);
+			responseDelivered = true;
+			responseListener.onSuccess(response);
+
+			hoop.downloadingAndProcessingInterval = System.nanoTime() - start;
+		}
+
+		final void waitForResponse(HttpResponse response, HttpConnection connection)
+			throws IOException {
+			long start = System.nanoTime();
 
-			for (String key : keys) {
-				if (key == null)
+			response.responseCode = connection.getResponseCode();
+			Map<String, List<String>> headerFields = connection.getHeaderFields();
+			HttpHeaders headers = response.headers = new HttpHeaders(headerFields.size());
+			for (Entry<String, List<String>> header : headerFields.entrySet()) {
+				// the status line is reported under a null key
+				if (header.getKey() == null)
 					continue;
 
-				List<String> value = response.headers.remove(key);
-				List<String> olderValue = response.headers.put(key.toLowerCase(), value);
-				if (olderValue != null)
-					logger.logWarning("POTENTIAL BUG... SAME HEADER NAME DIFFERENT CASING FOR KEY: " + key);
+				for (String value : header.getValue()) {
+					headers.add(header.getKey(), value);
+				}
 			}
 
-			hoop.waitForServerInterval = System.currentTimeMillis() - start;
+			hoop.waitForServerInterval = System.nanoTime() - start;
 		}
 
 		final boolean processRedirect()
@@ -362,7 +731,7 @@ public final class HttpModule
 			if (response.responseCode < 300 || response.responseCode >= 400)
 				return false;
 
-			List<String> locations = response.getHeader("location");
+			List<String> locations = response.headers.getAll("location");
 			if (locations.size() > 1)
 				throw new IOException("redirect has ambiguous locations... cannot determine which!!");
 
@@ -373,66 +742,151 @@ public final class HttpModule
 			if (location.length() == 0)
 				return false;
 
-			request.url = location;
+			redirectUrl = location;
 			return true;
 		}
 
+		/**
+		 * Logging is level gated before any message is built, and the logger itself is only created once something is to be logged.
+		 */
+		private boolean isLoggable(LogLevel level) {
+			return HttpModule.isLoggable(logLevel, level);
+		}
+
+		private Logger getLogger() {
+			if (logger == null) {
+				logger = BeLogged.getInstance().getLogger(HttpModule.this);
+				logger.setMinLogLevel(logLevel);
+			}
+
+			return logger;
+		}
+
+		/**
+		 * @param headers The headers sent by the current hop, or null if it did not connect
+		 */
+		private void printRequest(HttpHeaders headers) {
+			if (isLoggable(LogLevel.Info))
+				request.printRequest(getLogger(), logLevel, hoop, headers != null ? headers : request.getHeaders());
+		}
+
+		/**
+		 * Of the transactions of a hedged request only the first to receive a response goes on to process it.
+		 */
+		private void claimResponse()
+			throws HttpCancelledException {
+			if (hedgeAttempt == null || hedgeAttempt.claim())
+				return;
+
+			// the winner cancels the losers, but might not have gotten to this one yet, a loser must not count as a failure of the host
+			cancelled = true;
+			throw new HttpCancelledException("Another transaction of the hedged request received a response first");
+		}
+
 		private void printTiming(ILogger logger, HoopTiming hoop, String indentation) {
-			logger.logVerbose("+--" + indentation + " Timing, Url: " + hoop.finalUrl.toString());
-			logger.logVerbose("+--" + indentation + " Timing, Connection: " + hoop.connectionInterval);
-			logger.logVerbose("+--" + indentation + " Timing, Uploading: " + hoop.uploadInterval);
-			logger.logVerbose("+--" + indentation + " Timing, Waiting for response : " + hoop.waitForServerInterval);
-			logger.logVerbose("+--" + indentation + " Timing, Downloading & Processing: " + hoop.downloadingAndProcessingInterval);
-			logger.logVerbose("+--" + indentation + " Timing, Total Hoop: " + hoop.getTotalHoopTime());
+			logger.logVerbose("+--" + indentation + " Timing, Url: " + hoop.finalUrl + (hoop.fromCache ? " (from cache)" : "") + (hedge ? " (hedge)" : ""));
+			logger.logVerbose("+--" + indentation + " Timing, Connection: " + toMillis(hoop.connectionInterval));
+			logger.logVerbose("+--" + indentation + " Timing, Uploading: " + toMillis(hoop.uploadInterval));
+			if (hoop.encodedBodyLength != hoop.bodyLength)
+				logger.logVerbose("+--" + indentation + " Timing, Body encoded: " + hoop.bodyLength + " -> " + hoop.encodedBodyLength + " bytes (ratio " + String.format(Locale.ENGLISH, "%.2f", hoop.getCompressionRatio()) + ")");
+			logger.logVerbose("+--" + indentation + " Timing, Waiting for response : " + toMillis(hoop.waitForServerInterval));
+			logger.logVerbose("+--" + indentation + " Timing, Downloading & Processing: " + toMillis(hoop.downloadingAndProcessingInterval));
+			logger.logVerbose("+--" + indentation + " Timing, Total Hoop: " + toMillis(hoop.getTotalHoopTime()));
 		}
 
-		final void postBody(HttpURLConnection connection, InputStream postStream)
+		final void postBody(HttpConnection connection, RequestBody body)
 			throws IOException {
 
-			if (postStream == null)
+			if (body == null)
 				return;
 
-			long start = System.currentTimeMillis();
-			byte[] buffer = new byte[1024];
-			int length;
-			long cached = 0;
-			int uploaded = 0;
+			long start = System.nanoTime();
+			UploadProgressStream outputStream = new UploadProgressStream(connection.getOutputStream(), body.getContentLength());
+			body.writeTo(outputStream);
+			outputStream.flush();
+			outputStream.onCompleted();
+			hoop.uploadInterval = System.nanoTime() - start;
+			hoop.encodedBodyLength = outputStream.uploaded;
+			hoop.bodyLength = body instanceof BodyEncoder.EncodedBody ? ((BodyEncoder.EncodedBody) body).getDecodedLength() : outputStream.uploaded;
+		}
+
+		/**
+		 * Reports the upload progress to the listener at most once per {@link #UploadProgressInterval}, and once the whole body was written.
+		 */
+		private final class UploadProgressStream
+			extends FilterOutputStream {
+
+			private final long length;
+
+			private long uploaded;
 
-			OutputStream outputStream = connection.getOutputStream();
+			private long reportedAt = System.nanoTime();
 
-			while ((length = postStream.read(buffer)) != -1) {
-				outputStream.write(buffer, 0, length);
-				cached += length;
+			private UploadProgressStream(OutputStream outputStream, long length) {
+				super(outputStream);
+				this.length = length;
+			}
+
+			@Override
+			public void write(int b)
+				throws IOException {
+				out.write(b);
+				onWritten(1);
+			}
+
+			@Override
+			public void write(byte[] buffer, int offset, int length)
+				throws IOException {
+				out.write(buffer, offset, length);
+				onWritten(length);
+			}
+
+			private void onWritten(int length) {
 				uploaded += length;
-				responseListener.onUploadProgress(uploaded, postStream.available());
-				if (cached < 1024 * 1024)
-					continue;
+				long now = System.nanoTime();
+				if (now - reportedAt < UploadProgressInterval)
+					return;
 
-				outputStream.flush();
-				cached = 0;
+				reportedAt = now;
+				reportProgress();
 			}
 
-			outputStream.flush();
-			postStream.close();
-			hoop.uploadInterval = System.currentTimeMillis() - start;
+			private void onCompleted() {
+				reportProgress();
+			}
 
-			//			outputStream.close();
+			private void reportProgress() {
+				responseListener.onUploadProgress(uploaded, length < 0 ? -1 : length - uploaded);
+			}
 		}
 
-		private HttpURLConnection connect(InputStream inputStream)
+		private URL composeURL()
 			throws IOException {
-			long start = System.currentTimeMillis();
-
-			String urlPath = request.composeURL();
-			URL url;
+			String urlPath = request.composeURL(redirectUrl);
 			try {
-				url = new URL(urlPath);
+				return hoop.finalUrl = new URL(urlPath);
 			} catch (MalformedURLException e) {
 				throw new IOException("error parsing url: " + urlPath, e);
 			}
+		}
+
+		private HttpConnection connect(URL url, HttpHeaders headers, RequestBody body)
+			throws IOException {
+			long start = System.nanoTime();
+
+			HttpConnectionPool.Lease lease = connectionPool.acquire(url);
+			response.lease = lease;
+
+			HttpTransport transport = request.transport != null ? request.transport : HttpModule.this.transport;
+			HttpConnection connection = lease.connection = transport.connect(request, url, headers, body);
+			hoop.connectionInterval = System.nanoTime() - start;
+			synchronized (this) {
+				this.connection = connection;
+			}
+
+			if (cancelled)
+				throw createCancelledException(null);
 
-			HttpURLConnection connection = request.connect(hoop.finalUrl = url, inputStream);
-			hoop.connectionInterval = System.currentTimeMillis() - start;
 			return connection;
 		}
 	}
@@ -441,9 +895,39 @@ public final class HttpModule
 		extends HttpRequest {
 
 		@Override
-		public void execute(HttpResponseListener listener) {
-			HttpPoolQueue queue = getOrCreateQueue(executionPool);
-			queue.addItem(new HttpTransaction(this, listener));
+		public HttpRequestHandle execute(HttpResponseListener listener) {
+			String coalescingKey = getCoalescingKey();
+			if (coalescingKey == null)
+				return executeTransactions(listener);
+
+			CoalescedResponseListener inFlightListener;
+			synchronized (inFlight) {
+				inFlightListener = inFlight.get(coalescingKey);
+				if (inFlightListener != null && inFlightListener.join(listener))
+					return new CoalescedRequestHandle(inFlightListener, listener);
+
+				inFlight.put(coalescingKey, inFlightListener = new CoalescedResponseListener(inFlight, coalescingKey, listener));
+			}
+
+			inFlightListener.setExecution(executeTransactions(inFlightListener));
+			return new CoalescedRequestHandle(inFlightListener, listener);
+		}
+
+		private HttpRequestHandle executeTransactions(HttpResponseListener listener) {
+			HedgePolicy hedgePolicy = getHedgePolicy();
+			if (hedgePolicy != null)
+				return executeHedged(this, listener, hedgePolicy);
+
+			HttpTransaction transaction = new HttpTransaction(this, listener);
+			getOrCreateQueue(executionPool).execute(transaction);
+			return new TransactionHandle(transaction);
+		}
+
+		@Override
+		public <ResponseType> HttpResponseFuture<ResponseType> executeAsync(Class<ResponseType> responseType) {
+			HttpResponseFuture<ResponseType> future = new HttpResponseFuture<>(responseType);
+			future.setHandle(execute(future.listener));
+			return future;
 		}
 
 		/**
@@ -460,13 +944,32 @@ public final class HttpModule
 
 		public InputStream executeSync()
 			throws Throwable {
-			executeAction(new HttpTransaction(this, new HttpResponseListener<InputStream, String>(InputStream.class, String.class) {
+			return executeSync(false);
+		}
+
+		/**
+		 * Same as {@link #executeSync()} without buffering the response in memory, the returned stream reads directly from the connection.
+		 *
+		 * @return The live response input stream, <b>closing it releases the connection</b>!
+		 */
+		public InputStream executeSyncStream()
+			throws Throwable {
+			return executeSync(true);
+		}
+
+		private InputStream executeSync(final boolean streaming)
+			throws Throwable {
+			HttpTransaction transaction = new HttpTransaction(this, new HttpResponseListener<InputStream, String>(InputStream.class, String.class) {
 				@Override
 				public void onSuccess(HttpResponse httpResponse, InputStream responseBody) {
-					try {
-						ByteArrayOutputStream baos = new ByteArrayOutputStream();
-						StreamTools.copy(responseBody, baos);
-						response = new ByteArrayInputStream(baos.toByteArray());
+					if (streaming) {
+						response = httpResponse.detachInputStream();
+						return;
+					}
+
+					try (PooledOutputStream bos = new PooledOutputStream(BufferPool.Instance, httpResponse.responseSize)) {
+						BufferPool.Instance.copy(responseBody, bos);
+						response = new ByteArrayInputStream(bos.toByteArray());
 					} catch (IOException e) {
 						error = e;
 					}
@@ -476,46 +979,622 @@ public final class HttpModule
 				public void onError(HttpResponse httpResponse, String errorBody) {
 					error = new IOException(errorBody, httpResponse.exception);
 				}
-			}));
+			});
+
+			// the calling thread is not a pool thread, it may wait for the retries itself
+			while (true) {
+				try {
+					executeAction(transaction);
+					break;
+				} catch (Throwable e) {
+					long delay = getRetryDelay(transaction, e);
+					if (delay < 0)
+						throw e;
+
+					Thread.sleep(delay);
+				}
+			}
 
-			if (error != null)
+			if (error != null) {
+				close(response);
 				throw error;
+			}
 
 			return response;
 		}
 	}
 
-	protected void executeAction(HttpTransaction transaction)
+	protected void executeAction(final HttpTransaction transaction)
 		throws IOException {
-		while (transaction.execute())
-			;
+		transaction.startedAt = System.nanoTime();
+
+		// the deadline bounds the transaction as a whole, the connect and read timeouts only bound a single read
+		ScheduledFuture<?> watchdog = null;
+		if (transaction.deadline != FairQueue.NoDeadline)
+			watchdog = getScheduler().schedule(new Runnable() {
+				@Override
+				public void run() {
+					transaction.cancel(true);
+				}
+			}, transaction.deadline - transaction.startedAt, TimeUnit.NANOSECONDS);
+
+		Throwable error = null;
+		try {
+			while (transaction.execute())
+				;
+		} catch (Throwable e) {
+			error = e;
+			throw e;
+		} finally {
+			if (watchdog != null)
+				watchdog.cancel(false);
+
+			dispatchMetrics(transaction, error);
+		}
 	}
 
-	private class HttpPoolQueue
-		extends PoolQueue<HttpTransaction> {
+	private abstract class RequestHandle
+		implements HttpRequestHandle {
+
+		private final AtomicBoolean cancelled = new AtomicBoolean();
 
 		@Override
-		protected void onExecutionError(HttpTransaction item, Throwable e) {
+		public final void cancel() {
+			if (cancelled.compareAndSet(false, true))
+				onCancelled();
+		}
+
+		@Override
+		public final boolean isCancelled() {
+			return cancelled.get();
+		}
+
+		protected abstract void onCancelled();
+	}
+
+	private class TransactionHandle
+		extends RequestHandle {
+
+		private final HttpTransaction transaction;
+
+		private TransactionHandle(HttpTransaction transaction) {
+			this.transaction = transaction;
+		}
+
+		@Override
+		protected void onCancelled() {
+			cancelTransaction(transaction);
+		}
+	}
+
+	private class HedgedRequestHandle
+		extends RequestHandle {
+
+		private final HedgeGroup group;
+
+		private HedgedRequestHandle(HedgeGroup group) {
+			this.group = group;
+		}
+
+		@Override
+		protected void onCancelled() {
+			for (HttpTransaction transaction : group.cancel()) {
+				cancelTransaction(transaction);
+			}
+		}
+	}
+
+	/**
+	 * A listener that joined a coalesced transaction only leaves it, the transaction is cancelled once no listener is left.
+	 */
+	private class CoalescedRequestHandle
+		extends RequestHandle {
+
+		private final CoalescedResponseListener coalescedListener;
+
+		private final HttpResponseListener listener;
+
+		private CoalescedRequestHandle(CoalescedResponseListener coalescedListener, HttpResponseListener listener) {
+			this.coalescedListener = coalescedListener;
+			this.listener = listener;
+		}
+
+		@Override
+		protected void onCancelled() {
+			if (!coalescedListener.leave(listener))
+				return;
+
 			HttpResponse httpResponse = new HttpResponse();
-			httpResponse.exception = e;
+			httpResponse.exception = new HttpCancelledException("Request was cancelled");
+			try {
+				listener.onError(httpResponse);
+			} catch (Throwable e) {
+				logError("Error while dispatching a cancelled request", e);
+			}
+		}
+	}
+
+	/**
+	 * A transaction still waiting in its queue is removed and failed right away, a running one fails on the thread executing it.
+	 */
+	private void cancelTransaction(HttpTransaction transaction) {
+		transaction.cancel();
+
+		ExecutionPool executionPool = transaction.request.executionPool != null ? transaction.request.executionPool : DefaultExecutionPool;
+		TransactionExecutor queue = queues.get(executionPool.key);
+		if (queue == null || !queue.remove(transaction))
+			return;
+
+		transaction.startedAt = System.nanoTime();
+		IOException e = transaction.createCancelledException(null);
+		dispatchMetrics(transaction, e);
+		onTransactionError(transaction, e);
+	}
+
+	/**
+	 * Queues the first transaction of a hedged request, and schedules a hedge to be queued if no response arrived within the hedge delay.
+	 */
+	private HttpRequestHandle executeHedged(final HttpRequest request, HttpResponseListener listener, HedgePolicy hedgePolicy) {
+		final HedgeGroup group = new HedgeGroup(listener);
+		final TransactionExecutor queue = getOrCreateQueue(request.executionPool);
+		final long deadline = getDeadline(request);
+		final RetryBudget hedgeBudget = this.hedgeBudget;
+		if (hedgeBudget != null)
+			hedgeBudget.onRequest();
+
+		RetryBudget retryBudget = this.retryBudget;
+		if (retryBudget != null)
+			retryBudget.onRequest();
+
+		queue.execute(newHedgedTransaction(request, group.newAttempt(), deadline));
+
+		String host;
+		try {
+			host = new URL(request.composeURL()).getHost();
+		} catch (IOException e) {
+			host = null;
+		}
+
+		getScheduler().schedule(new Runnable() {
+			@Override
+			public void run() {
+				HedgeGroup.Attempt attempt = group.newAttempt();
+				if (attempt == null)
+					return;
+
+				if (hedgeBudget != null && !hedgeBudget.tryAcquire())
+					return;
+
+				HttpTransaction hedge = newHedgedTransaction(request, attempt, deadline);
+				hedge.hedge = true;
+				queue.execute(hedge);
+			}
+		}, hedgePolicy.getDelay(host), TimeUnit.MILLISECONDS);
+
+		return new HedgedRequestHandle(group);
+	}
+
+	private HttpTransaction newHedgedTransaction(HttpRequest request, HedgeGroup.Attempt attempt, long deadline) {
+		HttpTransaction transaction = new HttpTransaction(request, attempt, deadline);
+		transaction.hedgeAttempt = attempt;
+		attempt.transaction = transaction;
+		return transaction;
+	}
+
+	/**
+	 * @return The time in nanos by which the request is to complete, counting from now, or {@link FairQueue#NoDeadline}.
+	 */
+	private static long getDeadline(HttpRequest request) {
+		return request.getDeadline() > 0 ? System.nanoTime() + request.getDeadline() * 1000000L : FairQueue.NoDeadline;
+	}
+
+	/**
+	 * Executes a transaction taken from a queue, a failed transaction is either scheduled for a retry or reported to its listener.
+	 */
+	private void executeQueued(final HttpTransaction transaction) {
+		try {
+			executeAction(transaction);
+		} catch (Throwable e) {
+			long delay = getRetryDelay(transaction, e);
+			if (delay < 0) {
+				onTransactionError(transaction, e);
+				return;
+			}
+
+			// the pool thread is released while waiting, the retry is queued again once the delay has passed
+			getScheduler().schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (transaction.cancelled) {
+						onTransactionError(transaction, transaction.createCancelledException(null));
+						return;
+					}
+
+					transaction.enqueuedAt = System.nanoTime();
+					getOrCreateQueue(transaction.request.executionPool).execute(transaction);
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * @return The delay in ms before the failed transaction is attempted again, or -1 if it is not to be retried.
+	 */
+	private long getRetryDelay(HttpTransaction transaction, Throwable e) {
+		if (transaction.responseDelivered)
+			return -1;
+
+		HttpRequest request = transaction.request;
+		RetryPolicy policy = request.retryPolicy != null ? request.retryPolicy : defaultRetryPolicy;
+		if (policy == null || transaction.attempt + 1 >= policy.getMaxAttempts())
+			return -1;
+
+		if (!policy.isRetryable(request.getMethod()) || !policy.isRetryable(e))
+			return -1;
+
+		long delay = policy.getBackoff(transaction.attempt + 1, getRetryAfter(e));
+		if (delay < 0)
+			return -1;
+
+		if (transaction.deadline != FairQueue.NoDeadline && System.nanoTime() + delay * 1000000L - transaction.deadline > 0)
+			return -1;
+
+		RetryBudget retryBudget = this.retryBudget;
+		if (retryBudget != null && !retryBudget.tryAcquire()) {
+			if (transaction.isLoggable(LogLevel.Warning))
+				transaction.getLogger().logWarning("+-- Retry budget exhausted, not retrying: " + e);
+			return -1;
+		}
+
+		transaction.attempt++;
+		transaction.hoop = null;
+		if (transaction.isLoggable(LogLevel.Info))
+			transaction.getLogger().logInfo("+-- Retry " + transaction.attempt + "/" + (policy.getMaxAttempts() - 1) + " in " + delay + "ms, after: " + e);
+
+		return delay;
+	}
+
+	/**
+	 * @return The delay in ms a throttled or unavailable server asked for, or -1. Only the delay-seconds form of Retry-After is supported.
+	 */
+	private static long getRetryAfter(Throwable e) {
+		if (!(e instanceof HttpException) || ((HttpException) e).response == null)
+			return -1;
+
+		String retryAfter = ((HttpException) e).response.getHeaderValue("retry-after");
+		if (retryAfter == null)
+			return -1;
+
+		try {
+			return Long.parseLong(retryAfter.trim()) * 1000;
+		} catch (NumberFormatException ignore) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Times retries and hedges, the scheduled tasks only queue transactions and must never block.
+	 */
+	private synchronized ScheduledExecutorService getScheduler() {
+		if (scheduler != null)
+			return scheduler;
+
+		ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "http-scheduler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		// deadline watchdogs are cancelled by almost every transaction that has a deadline, they must not pile up until they are due
+		scheduler.setRemoveOnCancelPolicy(true);
+		return this.scheduler = scheduler;
+	}
+
+	private void onCircuitStateChanged(String key, CircuitBreaker.State from, CircuitBreaker.State to) {
+		if (to == CircuitBreaker.State.Open)
+			logWarning("Circuit opened for: " + key);
+		else
+			logInfo("Circuit " + from + " -> " + to + " for: " + key);
+
+		try {
+			if (generalErrorListener != null)
+				generalErrorListener.onCircuitStateChanged(key, from, to);
+		} catch (Throwable e) {
+			logError("Error while dispatching circuit state change", e);
+		}
+
+		for (HttpMetricsListener listener : metricsListeners) {
 			try {
-				item.responseListener.onError(httpResponse);
-			} catch (Throwable e1) {
-				logError("ERROR WHILE HANDLING AN ERROR:\nNot really sure what to do here....?", e1);
+				listener.onCircuitStateChanged(key, from, to);
+			} catch (Throwable e) {
+				logError("Error while dispatching circuit state change", e);
 			}
+		}
+	}
+
+	private void dispatchMetrics(HttpTransaction transaction, Throwable error) {
+		if (metricsListeners.isEmpty())
+			return;
 
+		long now = System.nanoTime();
+		HttpRequest request = transaction.request;
+		HoopTiming hoop = transaction.hoop;
+		ExecutionPool executionPool = request.executionPool != null ? request.executionPool : DefaultExecutionPool;
+		String host = hoop != null && hoop.finalUrl != null ? hoop.finalUrl.getHost() : null;
+
+		int responseCode = -1;
+		if (error instanceof HttpException && ((HttpException) error).response != null)
+			responseCode = ((HttpException) error).response.responseCode;
+		else if (error == null && transaction.response != null)
+			responseCode = transaction.response.responseCode;
+
+		HttpTransactionMetrics metrics = new HttpTransactionMetrics(executionPool.key, host, request.getMethod(), request.tag, responseCode, error, hoop, transaction.hedge, transaction.startedAt - transaction.enqueuedAt, now - transaction.startedAt);
+		for (HttpMetricsListener listener : metricsListeners) {
 			try {
-				if (HttpModule.this.generalErrorListener != null)
-					HttpModule.this.generalErrorListener.onError(item, e);
-			} catch (Throwable e1) {
-				logError("ERROR WHILE HANDLING AN ERROR:\nNot really sure what to do here....?", e1);
+				listener.onTransactionCompleted(metrics);
+			} catch (Throwable e) {
+				logError("Error while dispatching transaction metrics", e);
 			}
 		}
+	}
+
+	public void addMetricsListener(HttpMetricsListener listener) {
+		metricsListeners.addIfAbsent(listener);
+	}
+
+	public void removeMetricsListener(HttpMetricsListener listener) {
+		metricsListeners.remove(listener);
+	}
+
+	public HashMap<String, ExecutionPoolStatistics> getExecutionPoolStatistics() {
+		HashMap<String, ExecutionPoolStatistics> statistics = new HashMap<>();
+		for (TransactionExecutor executor : queues.values()) {
+			ExecutionPoolStatistics poolStatistics = executor.getStatistics();
+			statistics.put(poolStatistics.key, poolStatistics);
+		}
+
+		return statistics;
+	}
+
+	static boolean isLoggable(LogLevel minLogLevel, LogLevel level) {
+		return level.ordinal() >= minLogLevel.ordinal();
+	}
+
+	private static String toMillis(long nanos) {
+		return String.format(Locale.ENGLISH, "%.3fms", nanos / 1000000d);
+	}
+
+	private void onTransactionError(HttpTransaction item, Throwable e) {
+		HttpResponse httpResponse = new HttpResponse();
+		httpResponse.exception = e;
+		try {
+			item.responseListener.onError(httpResponse);
+		} catch (Throwable e1) {
+			logError("ERROR WHILE HANDLING AN ERROR:\nNot really sure what to do here....?", e1);
+		}
+
+		// a cancelled transaction is not an error, e.g. the losing transaction of a hedged request
+		if (e instanceof HttpCancelledException)
+			return;
+
+		try {
+			if (generalErrorListener != null)
+				generalErrorListener.onError(item, e);
+		} catch (Throwable e1) {
+			logError("ERROR WHILE HANDLING AN ERROR:\nNot really sure what to do here....?", e1);
+		}
+	}
+
+	/**
+	 * Transactions are queued per tag and priority, and weighted by both.
+	 */
+	private void schedule(FairQueue<HttpTransaction> scheduled, ExecutionPool executionPool, HttpTransaction transaction) {
+		HttpRequest request = transaction.request;
+		HttpPriority priority = request.getPriority();
+		String flow = request.tag == null ? priority.name() : priority.name() + "/" + request.tag;
+		scheduled.add(transaction, flow, priority.weight * executionPool.getTagWeight(request.tag), transaction.deadline);
+	}
+
+	/**
+	 * @return The next transaction to execute, transactions whose deadline passed while waiting are failed instead.
+	 */
+	private HttpTransaction nextTransaction(FairQueue<HttpTransaction> scheduled) {
+		ArrayList<HttpTransaction> expired = new ArrayList<>(0);
+		HttpTransaction transaction = scheduled.poll(expired);
+		for (HttpTransaction expiredTransaction : expired) {
+			expiredTransaction.startedAt = System.nanoTime();
+			HttpDeadlineExceededException e = new HttpDeadlineExceededException("Deadline of " + expiredTransaction.request.getDeadline() + "ms passed while waiting in queue");
+			dispatchMetrics(expiredTransaction, e);
+			onTransactionError(expiredTransaction, e);
+		}
+
+		return transaction;
+	}
+
+	private interface TransactionExecutor {
+
+		void execute(HttpTransaction transaction);
+
+		/**
+		 * @return true if the transaction was still waiting in the queue, and is now removed.
+		 */
+		boolean remove(HttpTransaction transaction);
+
+		ExecutionPoolStatistics getStatistics();
+
+		void dispose();
+	}
+
+	/**
+	 * Every item added to the pool queue only wakes a worker, which then executes whichever transaction the fair queue serves next.
+	 */
+	private class HttpPoolQueue
+		extends PoolQueue<HttpTransaction>
+		implements TransactionExecutor {
+
+		private final FairQueue<HttpTransaction> scheduled = new FairQueue<>();
+		private final AtomicInteger active = new AtomicInteger();
+		private final ExecutionPool executionPool;
+		private final int capacity;
+
+		private HttpPoolQueue(ExecutionPool executionPool) {
+			this.executionPool = executionPool;
+			capacity = executionPool.numberOfThreads;
+		}
 
 		@Override
-		protected void executeAction(HttpTransaction transaction)
-			throws IOException {
-			HttpModule.this.executeAction(transaction);
+		public void execute(HttpTransaction transaction) {
+			schedule(scheduled, executionPool, transaction);
+			addItem(transaction);
+		}
+
+		@Override
+		public boolean remove(HttpTransaction transaction) {
+			// the item added to the pool queue only wakes a worker, which finds nothing to execute
+			return scheduled.remove(transaction);
+		}
+
+		@Override
+		public ExecutionPoolStatistics getStatistics() {
+			return new ExecutionPoolStatistics(executionPool.key, capacity, active.get(), scheduled.size());
+		}
+
+		@Override
+		public void dispose() {
+			kill();
+			scheduled.clear();
+		}
+
+		@Override
+		protected void onExecutionError(HttpTransaction item, Throwable e) {
+			onTransactionError(item, e);
+		}
+
+		@Override
+		protected void executeAction(HttpTransaction ignore) {
+			HttpTransaction transaction = nextTransaction(scheduled);
+			if (transaction == null)
+				return;
+
+			active.incrementAndGet();
+			try {
+				executeQueued(transaction);
+			} finally {
+				active.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Runs each transaction on its own thread, while a semaphore caps the number of transactions in flight.
+	 */
+	private class HttpVirtualThreadQueue
+		implements TransactionExecutor {
+
+		private final FairQueue<HttpTransaction> scheduled = new FairQueue<>();
+		private final ExecutionPool executionPool;
+		private final AtomicInteger threadIndex = new AtomicInteger();
+		private final ThreadFactory threadFactory;
+		private final Processor<Thread> threadInitiator;
+		private final Semaphore permits;
+		private final int capacity;
+		private final String name;
+		private volatile boolean disposed;
+
+		private HttpVirtualThreadQueue(ExecutionPool executionPool) {
+			this.executionPool = executionPool;
+			name = executionPool.key;
+			threadInitiator = executionPool.threadInitiator;
+			capacity = Math.max(1, executionPool.numberOfThreads);
+			permits = new Semaphore(capacity);
+
+			ThreadFactory virtualThreadFactory = createVirtualThreadFactory();
+			if (virtualThreadFactory == null)
+				logWarning("Virtual threads are not supported by this JVM, execution pool '" + name + "' will use a platform thread per transaction");
+
+			threadFactory = virtualThreadFactory;
+		}
+
+		@Override
+		public void execute(HttpTransaction transaction) {
+			schedule(scheduled, executionPool, transaction);
+			drain();
+		}
+
+		@Override
+		public boolean remove(HttpTransaction transaction) {
+			return scheduled.remove(transaction);
+		}
+
+		@Override
+		public ExecutionPoolStatistics getStatistics() {
+			return new ExecutionPoolStatistics(name, capacity, capacity - permits.availablePermits(), scheduled.size());
+		}
+
+		private void drain() {
+			while (!disposed && scheduled.size() > 0) {
+				if (!permits.tryAcquire())
+					return;
+
+				final HttpTransaction transaction = nextTransaction(scheduled);
+				if (transaction == null) {
+					permits.release();
+					continue;
+				}
+
+				Thread thread = newThread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							executeQueued(transaction);
+						} finally {
+							// the thread ends with the transaction, its cached buffers would be lost with it
+							BufferPool.Instance.releaseThreadCache();
+							permits.release();
+							drain();
+						}
+					}
+				});
+
+				thread.start();
+			}
+		}
+
+		private Thread newThread(Runnable runnable) {
+			Thread thread;
+			if (threadFactory != null)
+				thread = threadFactory.newThread(runnable);
+			else {
+				thread = new Thread(runnable);
+				thread.setDaemon(true);
+			}
+
+			thread.setName(name + "-" + threadIndex.incrementAndGet());
+			if (threadInitiator != null)
+				threadInitiator.process(thread);
+
+			return thread;
+		}
+
+		@Override
+		public void dispose() {
+			disposed = true;
+			scheduled.clear();
+		}
+	}
+
+	/**
+	 * The module is compiled against Java 8, virtual threads are resolved reflectively and are used only when running on Java 21+.
+	 */
+	private static ThreadFactory createVirtualThreadFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+		} catch (Throwable e) {
+			return null;
 		}
 	}
 
@@ -529,8 +1608,17 @@ public final class HttpModule
 
 		long connectionInterval;
 
+		boolean fromCache;
+
 		long uploadInterval;
 
+		/**
+		 * The length of the request body before and after it was encoded, equal when it was sent as is
+		 */
+		long bodyLength;
+
+		long encodedBodyLength;
+
 		long waitForServerInterval;
 
 		long downloadingAndProcessingInterval;
@@ -554,5 +1642,12 @@ public final class HttpModule
 		long getTotalHoopTime() {
 			return connectionInterval + uploadInterval + waitForServerInterval + downloadingAndProcessingInterval;
 		}
+
+		/**
+		 * @return The length of the body divided by its encoded length, 1 if there was no body
+		 */
+		double getCompressionRatio() {
+			return encodedBodyLength == 0 ? 1 : (double) bodyLength / encodedBodyLength;
+		}
 	}
 }
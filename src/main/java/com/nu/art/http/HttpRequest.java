@@ -15,8 +15,9 @@ import com.nu.art.core.interfaces.ILogger;
 import com.nu.art.http.HttpModule.ExecutionPool;
 import com.nu.art.http.HttpModule.HoopTiming;
 import com.nu.art.http.consts.HttpMethod;
+import com.nu.art.http.consts.HttpPriority;
 
-import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
@@ -30,8 +31,6 @@ import javax.net.ssl.SSLContext;
 public abstract class HttpRequest
 	implements IHttpRequest {
 
-	private String finalUrl;
-
 	// Request
 	private HttpMethod method = HttpMethod.Get;
 	Processor<HttpRequest> preExecutionProcessor;
@@ -39,19 +38,29 @@ public abstract class HttpRequest
 	String tag;
 	String url;
 	private String bodyAsString;
+	private int bodyAsStringLength;
 	private int connectionTimeout = 10000;
 	private int readTimeout = 20000;
 	private Vector<HttpKeyValue> urlParams = new Vector<>();
 	boolean autoRedirect = true;
 	Getter<InputStream> _inputStream;
-	private Vector<HttpKeyValue> headers = new Vector<>();
-	private int requestBodyLength;
+	private RequestBody body;
+	private BodyEncoder bodyEncoder;
+	private int minEncodedBodyLength;
+	private final HttpHeaders headers = new HttpHeaders();
+	private long requestBodyLength;
 	private SSLContext sslContext;
+	HttpTransport transport;
+	boolean useCache = true;
+	private boolean coalescing;
+	private String[] coalescingHeaders;
 	LogLevel logLevel;
+	private HttpPriority priority = HttpPriority.Normal;
+	private int deadline;
+	RetryPolicy retryPolicy;
+	private HedgePolicy hedgePolicy;
 
-	HttpRequest() {
-		addHeader("accept-encoding", "gzip");
-	}
+	HttpRequest() {}
 
 	public final IHttpRequest setExecutionPool(ExecutionPool executionPool) {
 		this.executionPool = executionPool;
@@ -68,6 +77,11 @@ public abstract class HttpRequest
 		return this;
 	}
 
+	public final IHttpRequest setTransport(HttpTransport transport) {
+		this.transport = transport;
+		return this;
+	}
+
 	public final IHttpRequest setUrl(String url) {
 		this.url = url;
 		return this;
@@ -84,11 +98,27 @@ public abstract class HttpRequest
 	}
 
 	public final IHttpRequest addHeader(String key, String value) {
-		HttpKeyValue header = new HttpKeyValue(key, value);
-		headers.add(header);
+		synchronized (headers) {
+			headers.add(key, value);
+		}
 		return this;
 	}
 
+	final void setHeader(String key, String value) {
+		synchronized (headers) {
+			headers.set(key, value);
+		}
+	}
+
+	/**
+	 * @return The value of the first header matching the key, ignoring case.
+	 */
+	final String getHeaderValue(String key) {
+		synchronized (headers) {
+			return headers.get(key);
+		}
+	}
+
 	public final IHttpRequest addParameter(String key, String value) {
 		HttpKeyValue parameter = new HttpKeyValue(key, value);
 		if (urlParams.contains(parameter))
@@ -107,8 +137,10 @@ public abstract class HttpRequest
 		if (body == null)
 			return this;
 
+		final byte[] bodyAsBytes = body.getBytes();
+		setBody(RequestBody.of(bodyAsBytes));
 		this.bodyAsString = body;
-		setBody(() -> new ByteArrayInputStream(body.getBytes()));
+		this.bodyAsStringLength = bodyAsBytes.length;
 		return this;
 	}
 
@@ -130,6 +162,32 @@ public abstract class HttpRequest
 
 	public IHttpRequest setBody(Getter<InputStream> bodyAsInputStream) {
 		this._inputStream = bodyAsInputStream;
+		this.body = null;
+		this.bodyAsString = null;
+		return this;
+	}
+
+	public final IHttpRequest setBody(RequestBody body) {
+		this.body = body;
+		this._inputStream = null;
+		this.bodyAsString = null;
+		return this;
+	}
+
+	public final IHttpRequest setBodyEncoder(BodyEncoder encoder, int minLength) {
+		this.bodyEncoder = encoder;
+		this.minEncodedBodyLength = minLength;
+		return this;
+	}
+
+	public final IHttpRequest setUseCache(boolean useCache) {
+		this.useCache = useCache;
+		return this;
+	}
+
+	public final IHttpRequest setCoalescing(boolean coalescing, String... keyHeaders) {
+		this.coalescing = coalescing;
+		this.coalescingHeaders = keyHeaders;
 		return this;
 	}
 
@@ -138,6 +196,29 @@ public abstract class HttpRequest
 		return this;
 	}
 
+	public final IHttpRequest setPriority(HttpPriority priority) {
+		if (priority == null)
+			priority = HttpPriority.Normal;
+
+		this.priority = priority;
+		return this;
+	}
+
+	public final IHttpRequest setDeadline(int deadline) {
+		this.deadline = deadline;
+		return this;
+	}
+
+	public final IHttpRequest setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+		return this;
+	}
+
+	public final IHttpRequest setHedgePolicy(HedgePolicy hedgePolicy) {
+		this.hedgePolicy = hedgePolicy;
+		return this;
+	}
+
 	/*
 	 *
 	 *
@@ -157,6 +238,43 @@ public abstract class HttpRequest
 		return url;
 	}
 
+	public String getTag() {
+		return tag;
+	}
+
+	/**
+	 * @return A snapshot of the request headers.
+	 */
+	public HttpHeaders getHeaders() {
+		synchronized (headers) {
+			return headers.copy();
+		}
+	}
+
+	public HttpPriority getPriority() {
+		return priority;
+	}
+
+	public int getDeadline() {
+		return deadline;
+	}
+
+	public int getConnectTimeout() {
+		return connectionTimeout;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public SSLContext getSSLContext() {
+		return sslContext;
+	}
+
+	public boolean isFollowRedirect() {
+		return autoRedirect;
+	}
+
 	private HttpKeyValue[] getParameters() {
 		Vector<HttpKeyValue> allParameters = new Vector<>();
 		allParameters.addAll(urlParams);
@@ -165,7 +283,15 @@ public abstract class HttpRequest
 
 	final String composeURL()
 		throws IOException {
-		String urlPath = url;
+		return composeURL(null);
+	}
+
+	/**
+	 * @param redirectUrl The location a transaction of this request was redirected to, or null to compose the url of the request
+	 */
+	final String composeURL(String redirectUrl)
+		throws IOException {
+		String urlPath = redirectUrl != null ? redirectUrl : url;
 		HttpKeyValue[] parameters = getParameters();
 		StringBuilder params = new StringBuilder();
 		if (parameters.length > 0)
@@ -179,10 +305,61 @@ public abstract class HttpRequest
 		}
 		urlPath += params;
 
-		return finalUrl = urlPath;
+		return urlPath;
+	}
+
+	/**
+	 * @return The hedge policy of this request, or null if it is not to be hedged. Only GET requests are hedged.
+	 */
+	final HedgePolicy getHedgePolicy() {
+		return method == HttpMethod.Get ? hedgePolicy : null;
 	}
 
-	final HttpURLConnection connect(URL url, InputStream inputStream)
+	/**
+	 * @return The key identifying identical requests that may share a single transaction, or null if this request is not to be coalesced.
+	 */
+	final String getCoalescingKey() {
+		if (!coalescing || method != HttpMethod.Get)
+			return null;
+
+		StringBuilder key = new StringBuilder(method.method).append(' ');
+		try {
+			key.append(composeURL());
+		} catch (IOException e) {
+			return null;
+		}
+
+		if (coalescingHeaders != null)
+			for (String header : coalescingHeaders) {
+				key.append('\n').append(header.toLowerCase()).append(':').append(getHeaderValue(header));
+			}
+
+		return key.toString();
+	}
+
+	/**
+	 * @return The body to send with the next attempt of this request, or null if it has none. An {@link BodyEncoder.EncodedBody} is sent with its
+	 * content-encoding, which is set on the headers of the attempt and not on the request.
+	 */
+	final RequestBody openBody()
+		throws IOException {
+		RequestBody body = this.body;
+		if (_inputStream != null) {
+			InputStream inputStream = _inputStream.get();
+			body = inputStream == null ? null : RequestBody.of(inputStream);
+		}
+
+		if (body == null || bodyEncoder == null)
+			return body;
+
+		long length = body.getContentLength();
+		if (length != -1 && length < minEncodedBodyLength)
+			return body;
+
+		return new BodyEncoder.EncodedBody(body, bodyEncoder);
+	}
+
+	final HttpURLConnection connect(URL url, HttpHeaders headers, RequestBody body)
 		throws IOException {
 
 		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
@@ -193,54 +370,73 @@ public abstract class HttpRequest
 		connection.setInstanceFollowRedirects(autoRedirect);
 		connection.setConnectTimeout(connectionTimeout);
 		connection.setReadTimeout(readTimeout);
-		connection.setDoOutput(inputStream != null);
+		connection.setDoOutput(body != null);
 		connection.setUseCaches(false);
 
-		if (inputStream != null)
-			connection.setFixedLengthStreamingMode(requestBodyLength = inputStream.available());
+		if (body != null) {
+			requestBodyLength = body.getContentLength();
+			if (requestBodyLength >= 0)
+				connection.setFixedLengthStreamingMode(requestBodyLength);
+			else
+				connection.setChunkedStreamingMode(RequestBody.BufferSize);
+		}
 
-		for (HttpKeyValue header : headers) {
-			if (header.value == null)
+		for (int i = 0; i < headers.size(); i++) {
+			String value = headers.getValue(i);
+			if (value == null)
 				continue;
 
-			connection.addRequestProperty(header.key, header.value);
+			connection.addRequestProperty(headers.getName(i), value);
 		}
 
 		connection.connect();
 		return connection;
 	}
 
-	final void printRequest(ILogger logger, HoopTiming hoop) {
-		logger.logDebug("+----------------------------- HTTP REQUEST ------------------------------+");
-		logger.logInfo("+-- URL(" + hoop.hoopIndex + "): " + method + " - " + finalUrl);
-		logger.logVerbose("+-- Connection-Timeout: " + connectionTimeout);
+	final void printRequest(ILogger logger, LogLevel minLogLevel, HoopTiming hoop, HttpHeaders headers) {
+		boolean debug = HttpModule.isLoggable(minLogLevel, LogLevel.Debug);
+		boolean verbose = HttpModule.isLoggable(minLogLevel, LogLevel.Verbose);
+
+		if (debug)
+			logger.logDebug("+----------------------------- HTTP REQUEST ------------------------------+");
 
-		if (sslContext != null)
-			logger.logVerbose("+-- SSL-Context: " + sslContext);
+		logger.logInfo("+-- URL(" + hoop.hoopIndex + "): " + method + " - " + hoop.finalUrl);
+		if (verbose) {
+			logger.logVerbose("+-- Connection-Timeout: " + connectionTimeout);
+
+			if (sslContext != null)
+				logger.logVerbose("+-- SSL-Context: " + sslContext);
+		}
 
-		if (urlParams.size() > 0)
-			logger.logDebug("+-- Request Params: ");
-		for (HttpKeyValue param : urlParams) {
-			logger.logDebug("+----  " + param.key + ": " + param.value);
+		if (debug) {
+			if (urlParams.size() > 0)
+				logger.logDebug("+-- Request Params: ");
+			for (HttpKeyValue param : urlParams) {
+				logger.logDebug("+----  " + param.key + ": " + param.value);
+			}
 		}
 
-		if (headers.size() > 0)
-			logger.logVerbose("+-- Request Headers: ");
-		for (HttpKeyValue header : headers) {
-			logger.logVerbose("+----  " + header.key + ": " + header.value);
+		if (verbose) {
+			if (headers.size() > 0)
+				logger.logVerbose("+-- Request Headers: ");
+			for (int i = 0; i < headers.size(); i++) {
+				logger.logVerbose("+----  " + headers.getName(i) + ": " + headers.getValue(i));
+			}
 		}
 
 		if (bodyAsString != null) {
-			logger.logVerbose("+-- Request Body (" + bodyAsString.getBytes().length + "): ");
-			logger.logDebug("+-- Request Body: " + bodyAsString);
-		} else if (requestBodyLength > 0)
+			if (verbose)
+				logger.logVerbose("+-- Request Body (" + bodyAsStringLength + "): ");
+			if (debug)
+				logger.logDebug("+-- Request Body: " + bodyAsString);
+		} else if (requestBodyLength > 0 && verbose)
 			logger.logVerbose("+-- Body Length: " + requestBodyLength);
 	}
 
-	final void close(InputStream inputStream) {
+	final void close(Closeable closeable) {
 		try {
-			if (inputStream != null)
-				inputStream.close();
+			if (closeable != null)
+				closeable.close();
 		} catch (IOException ignore) {
 		}
 	}
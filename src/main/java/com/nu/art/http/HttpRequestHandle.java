@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+/**
+ * A handle to an executed request, returned by {@link IHttpRequest#execute(HttpResponseListener)}.
+ *
+ * Cancelling a request that is still waiting in its queue removes it from the queue, cancelling a running request closes its connection and frees
+ * its executor. Either way the listener receives an error with an {@link HttpCancelledException}, unless the outcome was already dispatched.
+ */
+public interface HttpRequestHandle {
+
+	/**
+	 * Cancels the request, along with its scheduled retries and hedges. Has no effect once the request has completed.
+	 */
+	void cancel();
+
+	boolean isCancelled();
+}
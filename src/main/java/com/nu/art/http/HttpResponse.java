@@ -1,18 +1,16 @@
 package com.nu.art.http;
 
+import com.nu.art.belog.consts.LogLevel;
 import com.nu.art.http.headers.ContentType;
-import com.nu.art.http.headers.EncodingType;
 import com.nu.art.http.interfaces.HeaderType;
 import com.nu.art.core.interfaces.ILogger;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
 
 /**
  * Created by TacB0sS on 08-Mar 2017.
@@ -28,113 +26,187 @@ public class HttpResponse {
 
 	public InputStream inputStream;
 
-	Map<String, List<String>> headers;
+	public boolean fromCache;
+
+	HttpHeaders headers = new HttpHeaders();
 
 	String responseAsString;
 
-	public Map<String, List<String>> getHeaders() {
-		if (headers == null)
-			headers = new HashMap<>();
+	HttpConnectionPool.Lease lease;
 
-		return headers;
+	private boolean detached;
+
+	/**
+	 * @return A map of the response headers, keyed by their lower-cased names.
+	 */
+	public Map<String, List<String>> getHeaders() {
+		return headers.toMultimap();
 	}
 
+	/**
+	 * @return All the values of the given header, matched ignoring case, an empty list if none.
+	 */
 	public List<String> getHeader(String key) {
-		List<String> headers = getHeaders().get(key);
-		if (headers == null)
-			this.headers.put(key, headers = new ArrayList<>());
+		return headers.getAll(key);
+	}
 
-		return headers;
+	/**
+	 * @return The first value of the given header, matched ignoring case, or null if absent.
+	 */
+	public String getHeaderValue(String key) {
+		return headers.get(key);
 	}
 
-	private boolean hasFailed() {
+	final boolean hasFailed() {
 		return responseCode >= 300;
 	}
 
-	final void assertFailure(HttpURLConnection connection)
+	final void assertFailure(HttpConnection connection, Map<String, ResponseDecoder> decoders)
 		throws IOException {
 		if (!hasFailed())
 			return;
 
 		InputStream responseStream = connection.getErrorStream();
 		if (responseStream != null) {
-			inputStream = connection.getErrorStream();
-
-			if (hasEncodingType(EncodingType.GZip))
-				inputStream = new GZIPInputStream(inputStream);
+			inputStream = responseStream;
+			inputStream = ResponseDecoder.decode(decoders, headers.get("content-encoding"), inputStream);
 		}
 
 		throw new HttpException(this, "Got an error code (" + responseCode + ")");
 	}
 
 	@SuppressWarnings("unchecked")
-	final void processSuccess(HttpURLConnection connection)
+	final void processSuccess(HttpConnection connection, Map<String, ResponseDecoder> decoders)
 		throws IOException {
 		inputStream = connection.getInputStream();
 
 		if (inputStream == null)
 			return;
 
-		if (hasEncodingType(EncodingType.GZip))
-			inputStream = new GZIPInputStream(inputStream);
+		inputStream = ResponseDecoder.decode(decoders, headers.get("content-encoding"), inputStream);
 
-		List<String> header = getHeader("content-length");
-		if (header != null && header.size() == 1)
-			responseSize = Integer.valueOf(header.get(0));
+		String contentLength = headers.get("content-length");
+		if (contentLength != null)
+			responseSize = (int) Math.min(Integer.MAX_VALUE, FileResponseListener.parseLong(contentLength));
 		else if (inputStream != null)
 			responseSize = inputStream.available();
 	}
 
-	final void printResponse(ILogger logger) {
-		logger.logInfo("+-- Response Code: " + responseCode);
+	final void setFromCache(CachedResponse cached) {
+		fromCache = true;
+		responseCode = cached.responseCode;
+		headers = new HttpHeaders(cached.headers.size());
+		for (Map.Entry<String, List<String>> header : cached.headers.entrySet()) {
+			for (String value : header.getValue()) {
+				headers.add(header.getKey(), value);
+			}
+		}
+
+		responseSize = cached.body.length;
+		inputStream = new ByteArrayInputStream(cached.body);
+	}
+
+	/**
+	 * @return A detached copy of this response, reading its body from the given bytes.
+	 */
+	final HttpResponse copy(byte[] body) {
+		HttpResponse copy = new HttpResponse();
+		copy.responseCode = responseCode;
+		copy.responseSize = body != null ? body.length : responseSize;
+		copy.exception = exception;
+		copy.fromCache = fromCache;
+		copy.responseAsString = responseAsString;
+		copy.headers = headers.copy();
+
+		if (body != null)
+			copy.inputStream = new ByteArrayInputStream(body);
+
+		return copy;
+	}
+
+	final void printResponse(ILogger logger, LogLevel minLogLevel) {
+		boolean info = HttpModule.isLoggable(minLogLevel, LogLevel.Info);
+		boolean debug = HttpModule.isLoggable(minLogLevel, LogLevel.Debug);
+		boolean verbose = HttpModule.isLoggable(minLogLevel, LogLevel.Verbose);
+
+		if (info)
+			logger.logInfo("+-- Response Code: " + responseCode + (fromCache ? " (from cache)" : ""));
 		if (hasFailed()) {
 			if (responseAsString != null)
 				logger.logError("+-- Response: " + responseAsString);
-			else if (responseSize > 0)
+			else if (responseSize > 0 && verbose)
 				logger.logVerbose("+-- Error Response Length: " + responseSize);
 		} else {
-			if (responseAsString != null)
-				logger.logDebug("+-- Response: " + responseAsString);
-			else if (responseSize > 0)
+			if (responseAsString != null) {
+				if (debug)
+					logger.logDebug("+-- Response: " + responseAsString);
+			} else if (responseSize > 0 && verbose)
 				logger.logVerbose("+-- Response Length: " + responseSize);
 		}
 
-		Map<String, List<String>> headers = getHeaders();
+		if (!verbose)
+			return;
+
 		if (headers.size() > 0)
 			logger.logVerbose("+-- Response Headers: ");
-		for (String key : headers.keySet()) {
-			for (String value : headers.get(key)) {
-				logger.logVerbose("+---- " + key + ": " + value);
-			}
+		for (int i = 0; i < headers.size(); i++) {
+			logger.logVerbose("+---- " + headers.getName(i) + ": " + headers.getValue(i));
 		}
 	}
 
 	/*
 	 * Utility functions
 	 */
-	private boolean hasEncodingType(EncodingType encodingType) {
-		return hasMatchingHeader(encodingType);
-	}
-
 	protected final boolean isContentType(ContentType header) {
 		return hasMatchingHeader(header);
 	}
 
 	protected final boolean hasMatchingHeader(HeaderType header) {
-		List<String> contentTypes = headers.get(header.getHeader().key);
-		if (contentTypes == null || contentTypes.size() == 0)
-			return false;
-
-		for (String contentType : contentTypes) {
-			if (!contentType.contains(header.getHeader().value))
+		HttpKeyValue expected = header.getHeader();
+		for (int i = 0; i < headers.size(); i++) {
+			if (!headers.getName(i).equalsIgnoreCase(expected.key))
 				continue;
 
-			return true;
+			if (headers.getValue(i).contains(expected.value))
+				return true;
 		}
 
 		return false;
 	}
 
+	/**
+	 * Hands the live response stream over to the caller, which becomes responsible for closing it. Closing the returned stream also releases the
+	 * connection.
+	 */
+	final InputStream detachInputStream() {
+		detached = true;
+		final HttpConnectionPool.Lease lease = this.lease;
+		return new FilterInputStream(inputStream) {
+			private boolean closed;
+
+			@Override
+			public void close()
+				throws IOException {
+				if (closed)
+					return;
+
+				closed = true;
+				boolean reusable = false;
+				try {
+					super.close();
+					reusable = true;
+				} finally {
+					if (lease != null)
+						lease.release(reusable);
+				}
+			}
+		};
+	}
+
+	final boolean isDetached() {
+		return detached;
+	}
+
 	final void close() {
 		try {
 			if (inputStream != null)
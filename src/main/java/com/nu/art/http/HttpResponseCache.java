@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import com.nu.art.http.consts.HttpMethod;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TimeZone;
+
+/**
+ * A private HTTP cache (RFC 7234) in front of the GET transactions of the {@link HttpModule}.
+ *
+ * Fresh entries are served without touching the network, stale entries carrying an ETag or a Last-Modified validator are revalidated with a
+ * conditional request, and a 304 response is served from the cache.
+ */
+@SuppressWarnings( {
+	                   "unused",
+	                   "WeakerAccess"
+                   })
+public final class HttpResponseCache {
+
+	private static final String Header_CacheControl = "cache-control";
+
+	private static final String[] UncachedHeaders = {
+		"content-encoding",
+		"content-length",
+		"transfer-encoding",
+		"connection",
+		"keep-alive",
+	};
+
+	private final HttpCacheStore store;
+
+	private long maxEntrySize = 1024 * 1024;
+
+	public HttpResponseCache(HttpCacheStore store) {
+		this.store = store;
+	}
+
+	public HttpResponseCache setMaxEntrySize(long maxEntrySize) {
+		this.maxEntrySize = maxEntrySize;
+		return this;
+	}
+
+	public HttpCacheStore getStore() {
+		return store;
+	}
+
+	final CachedResponse lookup(HttpRequest request, String url) {
+		if (request.getMethod() != HttpMethod.Get || hasDirective(request.getHeaderValue(Header_CacheControl), "no-store"))
+			return null;
+
+		CachedResponse cached = store.get(url);
+		if (cached == null)
+			return null;
+
+		for (Entry<String, String> varyHeader : cached.varyHeaders.entrySet()) {
+			String value = request.getHeaderValue(varyHeader.getKey());
+			if (value == null ? varyHeader.getValue() != null : !value.equals(varyHeader.getValue()))
+				return null;
+		}
+
+		return cached;
+	}
+
+	final boolean isFresh(HttpRequest request, CachedResponse cached) {
+		String requestCacheControl = request.getHeaderValue(Header_CacheControl);
+		String cacheControl = cached.getHeader(Header_CacheControl);
+		if (hasDirective(requestCacheControl, "no-cache") || hasDirective(cacheControl, "no-cache"))
+			return false;
+
+		long age = getCurrentAge(cached, System.currentTimeMillis());
+		long requestMaxAge = getDirectiveSeconds(requestCacheControl, "max-age");
+		if (requestMaxAge != -1 && age > requestMaxAge * 1000)
+			return false;
+
+		return age < getFreshnessLifetime(cached);
+	}
+
+	/**
+	 * @param headers The headers of the attempt, the request itself is left untouched
+	 *
+	 * @return false if the request carries validators of its own, whose 304 response is for the caller and not for the cache.
+	 */
+	final boolean addValidators(HttpHeaders headers, CachedResponse cached) {
+		if (headers.contains("if-none-match") || headers.contains("if-modified-since"))
+			return false;
+
+		String etag = cached.getHeader("etag");
+		if (etag != null)
+			headers.set("if-none-match", etag);
+
+		String lastModified = cached.getHeader("last-modified");
+		if (lastModified != null)
+			headers.set("if-modified-since", lastModified);
+
+		return true;
+	}
+
+	/**
+	 * Refreshes the stored entry with the headers of a 304 response.
+	 */
+	final CachedResponse onNotModified(CachedResponse cached, HttpResponse response, long requestTime) {
+		HashMap<String, List<String>> headers = new HashMap<>(cached.headers);
+		Map<String, List<String>> refreshed = copyHeaders(response.headers);
+		for (Entry<String, List<String>> header : refreshed.entrySet()) {
+			headers.put(header.getKey(), header.getValue());
+		}
+
+		CachedResponse updated = new CachedResponse(cached.url, cached.responseCode, headers, cached.varyHeaders, cached.body, requestTime, System.currentTimeMillis());
+		store.put(cached.url, updated);
+		return updated;
+	}
+
+	/**
+	 * Responses to unsafe methods invalidate what we know of the target resource.
+	 */
+	final void invalidate(HttpRequest request, String url) {
+		if (request.getMethod() != HttpMethod.Get)
+			store.remove(url);
+	}
+
+	final boolean isCacheable(HttpRequest request, HttpResponse response) {
+		if (request.getMethod() != HttpMethod.Get)
+			return false;
+
+		if (response.responseCode != 200 && response.responseCode != 203)
+			return false;
+
+		if (hasDirective(request.getHeaderValue(Header_CacheControl), "no-store"))
+			return false;
+
+		String cacheControl = getHeader(response, Header_CacheControl);
+		if (hasDirective(cacheControl, "no-store"))
+			return false;
+
+		if (response.headers.getAll("vary").contains("*"))
+			return false;
+
+		long contentLength = response.responseSize;
+		if (contentLength > maxEntrySize)
+			return false;
+
+		return cacheControl != null || getHeader(response, "expires") != null || getHeader(response, "etag") != null || getHeader(response, "last-modified") != null;
+	}
+
+	/**
+	 * Wraps the (decoded) response stream, the body is stored once the stream has been fully read. A stream closed before its end, e.g. by a
+	 * streaming reader that stopped at the end of its document, is read to its end on close, up to the max entry size.
+	 */
+	final InputStream record(HttpRequest request, final String url, final HttpResponse response, final long requestTime) {
+		final HashMap<String, String> varyHeaders = new HashMap<>();
+		for (String value : response.headers.getAll("vary")) {
+			for (String name : value.split(",")) {
+				name = name.trim().toLowerCase();
+				if (name.length() > 0)
+					varyHeaders.put(name, request.getHeaderValue(name));
+			}
+		}
+
+		final Map<String, List<String>> headers = copyHeaders(response.headers);
+
+		return new FilterInputStream(response.inputStream) {
+			private ByteArrayOutputStream body = new ByteArrayOutputStream(response.responseSize > 0 ? response.responseSize : 1024);
+
+			@Override
+			public int read()
+				throws IOException {
+				int read = super.read();
+				if (read == -1)
+					onCompleted();
+				else
+					append(read);
+
+				return read;
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length)
+				throws IOException {
+				int read = super.read(buffer, offset, length);
+				if (read == -1)
+					onCompleted();
+				else if (read > 0 && body != null) {
+					body.write(buffer, offset, read);
+					if (body.size() > maxEntrySize)
+						body = null;
+				}
+
+				return read;
+			}
+
+			@Override
+			public long skip(long n)
+				throws IOException {
+				body = null;
+				return super.skip(n);
+			}
+
+			@Override
+			public void close()
+				throws IOException {
+				try {
+					if (body != null)
+						readToEnd();
+				} finally {
+					super.close();
+				}
+			}
+
+			private void readToEnd() {
+				byte[] buffer = BufferPool.Instance.acquire(RequestBody.BufferSize);
+				try {
+					while (body != null && read(buffer, 0, buffer.length) != -1) {}
+				} catch (IOException e) {
+					body = null;
+				} finally {
+					BufferPool.Instance.release(buffer);
+				}
+			}
+
+			private void append(int read) {
+				if (body == null)
+					return;
+
+				body.write(read);
+				if (body.size() > maxEntrySize)
+					body = null;
+			}
+
+			private void onCompleted() {
+				if (body == null)
+					return;
+
+				byte[] bytes = body.toByteArray();
+				body = null;
+
+				ArrayList<String> contentLength = new ArrayList<>();
+				contentLength.add(String.valueOf(bytes.length));
+				headers.put("content-length", contentLength);
+				store.put(url, new CachedResponse(url, response.responseCode, headers, varyHeaders, bytes, requestTime, System.currentTimeMillis()));
+			}
+		};
+	}
+
+	private long getFreshnessLifetime(CachedResponse cached) {
+		long maxAge = getDirectiveSeconds(cached.getHeader(Header_CacheControl), "max-age");
+		if (maxAge != -1)
+			return maxAge * 1000;
+
+		long date = parseDate(cached.getHeader("date"), cached.responseTime);
+		long expires = parseDate(cached.getHeader("expires"), -1);
+		if (expires != -1)
+			return Math.max(0, expires - date);
+
+		// heuristic freshness (RFC 7234, 4.2.2)
+		long lastModified = parseDate(cached.getHeader("last-modified"), -1);
+		if (lastModified != -1 && lastModified < date)
+			return (date - lastModified) / 10;
+
+		return 0;
+	}
+
+	private long getCurrentAge(CachedResponse cached, long now) {
+		long date = parseDate(cached.getHeader("date"), cached.responseTime);
+		long apparentAge = Math.max(0, cached.responseTime - date);
+
+		long ageValue = 0;
+		String age = cached.getHeader("age");
+		if (age != null) {
+			try {
+				ageValue = Long.parseLong(age.trim()) * 1000;
+			} catch (NumberFormatException ignore) {
+			}
+		}
+
+		long correctedAgeValue = ageValue + (cached.responseTime - cached.requestTime);
+		long correctedInitialAge = Math.max(apparentAge, correctedAgeValue);
+		return correctedInitialAge + (now - cached.responseTime);
+	}
+
+	private static boolean isUncachedHeader(String key) {
+		for (String uncachedHeader : UncachedHeaders) {
+			if (uncachedHeader.equals(key))
+				return true;
+		}
+
+		return false;
+	}
+
+	private static String getHeader(HttpResponse response, String key) {
+		return response.headers.get(key);
+	}
+
+	private static Map<String, List<String>> copyHeaders(HttpHeaders headers) {
+		Map<String, List<String>> copy = headers.toMultimap();
+		Iterator<String> names = copy.keySet().iterator();
+		while (names.hasNext()) {
+			if (isUncachedHeader(names.next()))
+				names.remove();
+		}
+
+		return copy;
+	}
+
+	private static boolean hasDirective(String cacheControl, String directive) {
+		return getDirective(cacheControl, directive) != null;
+	}
+
+	private static long getDirectiveSeconds(String cacheControl, String directive) {
+		String value = getDirective(cacheControl, directive);
+		if (value == null || value.length() == 0)
+			return -1;
+
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return The value of the directive, an empty String for a directive without a value, or null if the directive is absent.
+	 */
+	private static String getDirective(String cacheControl, String directive) {
+		if (cacheControl == null)
+			return null;
+
+		for (String token : cacheControl.split(",")) {
+			token = token.trim();
+			int index = token.indexOf('=');
+			String name = index == -1 ? token : token.substring(0, index).trim();
+			if (!name.equalsIgnoreCase(directive))
+				continue;
+
+			if (index == -1)
+				return "";
+
+			String value = token.substring(index + 1).trim();
+			if (value.startsWith("\"") && value.endsWith("\"") && value.length() > 1)
+				value = value.substring(1, value.length() - 1);
+
+			return value;
+		}
+
+		return null;
+	}
+
+	private static long parseDate(String date, long defaultValue) {
+		if (date == null)
+			return defaultValue;
+
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		try {
+			Date parsed = format.parse(date);
+			return parsed.getTime();
+		} catch (ParseException e) {
+			return defaultValue;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A typed handle to an asynchronously executed request.
+ *
+ * The future is completed from the thread that executed the transaction, with the converted response body, or exceptionally with the
+ * {@link HttpResponse#exception} of the failed transaction. Once completed, {@link #getResponse()} exposes the response code and headers.
+ *
+ * Response types other than {@link String} and {@link InputStream} are deserialized with {@link JsonSerializer}. An {@link InputStream} body is the
+ * live connection stream, <b>closing it releases the connection</b>.
+ *
+ * Cancelling the future cancels the request.
+ */
+public final class HttpResponseFuture<ResponseType>
+	extends CompletableFuture<ResponseType> {
+
+	private volatile HttpResponse response;
+
+	private volatile HttpRequestHandle handle;
+
+	final HttpResponseListener<ResponseType, String> listener;
+
+	HttpResponseFuture(Class<ResponseType> responseType) {
+		listener = new FutureResponseListener(responseType);
+	}
+
+	public HttpResponse getResponse() {
+		return response;
+	}
+
+	public int getResponseCode() {
+		return response == null ? -1 : response.responseCode;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		boolean cancelled = super.cancel(mayInterruptIfRunning);
+		HttpRequestHandle handle = this.handle;
+		if (cancelled && handle != null)
+			handle.cancel();
+
+		return cancelled;
+	}
+
+	final void setHandle(HttpRequestHandle handle) {
+		this.handle = handle;
+	}
+
+	private class FutureResponseListener
+		extends HttpResponseListener<ResponseType, String> {
+
+		private FutureResponseListener(Class<ResponseType> responseType) {
+			super(responseType, String.class);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		protected <Type> Type deserialize(Class<Type> type, String responseAsString) {
+			return (Type) JsonSerializer.Serializer.deserialize(responseAsString, type);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void onSuccess(HttpResponse httpResponse, ResponseType responseBody) {
+			response = httpResponse;
+			if (!(responseBody instanceof InputStream)) {
+				complete(responseBody);
+				return;
+			}
+
+			InputStream inputStream = httpResponse.detachInputStream();
+			if (complete((ResponseType) inputStream))
+				return;
+
+			// the future was cancelled, no one is left to close the stream and release its connection
+			try {
+				inputStream.close();
+			} catch (IOException ignore) {
+			}
+		}
+
+		@Override
+		public void onError(HttpResponse httpResponse, String errorBody) {
+			response = httpResponse;
+			completeExceptionally(httpResponse.exception != null ? httpResponse.exception : new HttpException(httpResponse, errorBody));
+		}
+	}
+}
@@ -9,11 +9,11 @@ package com.nu.art.http;
 
 import com.nu.art.core.exceptions.runtime.ImplementationMissingException;
 import com.nu.art.core.file.Charsets;
+import com.nu.art.http.BufferPool.PooledOutputStream;
 
-import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.List;
 
 import static com.nu.art.core.generics.GenericParamExtractor._GenericParamExtractor;
 
@@ -24,6 +24,8 @@ public abstract class HttpResponseListener<ResponseType, ErrorType> {
 
 	protected final Class<ErrorType> errorType;
 
+	private boolean streaming;
+
 	protected HttpResponseListener() {
 		responseType = _GenericParamExtractor.extractGenericType(HttpResponseListener.class, this, 0);
 		errorType = _GenericParamExtractor.extractGenericType(HttpResponseListener.class, this, 1);
@@ -34,6 +36,15 @@ public abstract class HttpResponseListener<ResponseType, ErrorType> {
 		this.errorType = errorType;
 	}
 
+	/**
+	 * When enabled, response bodies other than String are deserialized straight from the response stream via
+	 * {@link #deserialize(Class, InputStream)}, without building an intermediate String.
+	 */
+	public final HttpResponseListener<ResponseType, ErrorType> setStreaming(boolean streaming) {
+		this.streaming = streaming;
+		return this;
+	}
+
 	@SuppressWarnings("unchecked")
 	final <Type> Type convertToType(Class<Type> type, HttpResponse response)
 		throws IOException {
@@ -41,25 +52,32 @@ public abstract class HttpResponseListener<ResponseType, ErrorType> {
 		if (InputStream.class.isAssignableFrom(type))
 			return (Type) inputStream;
 
-		byte[] buffer = new byte[1024];
-		int downloaded = 0;
-		int length;
 		int available;
-
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		List<String> header = response.getHeader("Content-Length");
-		if (header.size() > 0)
-			available = Integer.parseInt(header.get(0));
+		String contentLength = response.getHeaderValue("content-length");
+		if (contentLength != null)
+			available = (int) Math.min(Integer.MAX_VALUE, FileResponseListener.parseLong(contentLength));
 		else
 			available = inputStream.available();
 
-		while ((length = inputStream.read(buffer)) != -1) {
-			bos.write(buffer, 0, length);
-			downloaded += length;
-			onDownloadProgress(downloaded, available);
+		if (streaming && type != String.class && type == responseType)
+			return deserialize(type, new ProgressInputStream(inputStream, available));
+
+		BufferPool pool = BufferPool.Instance;
+		byte[] buffer = pool.acquire(pool.getBufferSize());
+		try (PooledOutputStream bos = new PooledOutputStream(pool, available)) {
+			int downloaded = 0;
+			int length;
+			while ((length = inputStream.read(buffer)) != -1) {
+				bos.write(buffer, 0, length);
+				downloaded += length;
+				onDownloadProgress(downloaded, available);
+			}
+
+			response.responseAsString = bos.toString(Charsets.UTF_8.encoding);
+		} finally {
+			pool.release(buffer);
 		}
 
-		response.responseAsString = bos.toString(Charsets.UTF_8.encoding);
 		if (type == String.class)
 			return (Type) (response.responseAsString);
 
@@ -70,17 +88,31 @@ public abstract class HttpResponseListener<ResponseType, ErrorType> {
 		throw new ImplementationMissingException("if you got here, you probably meant to override this method!");
 	}
 
+	/**
+	 * Called for streamed responses, override to parse the body without reading it into memory first.
+	 */
+	protected <Type> Type deserialize(Class<Type> type, InputStream inputStream)
+		throws IOException {
+		String body;
+		try (PooledOutputStream bos = new PooledOutputStream(BufferPool.Instance, 0)) {
+			BufferPool.Instance.copy(inputStream, bos);
+			body = bos.toString(Charsets.UTF_8.encoding);
+		}
+
+		return deserialize(type, body);
+	}
+
 	public abstract void onSuccess(HttpResponse httpResponse, ResponseType responseBody);
 
 	public abstract void onError(HttpResponse httpResponse, ErrorType errorBody);
 
-	final void onSuccess(HttpResponse httpResponse)
+	void onSuccess(HttpResponse httpResponse)
 		throws IOException {
 		ResponseType responseBody = convertToType(responseType, httpResponse);
 		onSuccess(httpResponse, responseBody);
 	}
 
-	final void onError(HttpResponse httpResponse)
+	void onError(HttpResponse httpResponse)
 		throws IOException {
 
 		ErrorType errorBody = null;
@@ -100,4 +132,37 @@ public abstract class HttpResponseListener<ResponseType, ErrorType> {
 	protected void onDownloadProgress(long downloaded, long available) {
 
 	}
-}
\ No newline at end of file
+
+	private class ProgressInputStream
+		extends FilterInputStream {
+
+		private final long available;
+
+		private long downloaded;
+
+		private ProgressInputStream(InputStream in, long available) {
+			super(in);
+			this.available = available;
+		}
+
+		@Override
+		public int read()
+			throws IOException {
+			int read = super.read();
+			if (read != -1)
+				onDownloadProgress(++downloaded, available);
+
+			return read;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length)
+			throws IOException {
+			int read = super.read(buffer, offset, length);
+			if (read > 0)
+				onDownloadProgress(downloaded += read, available);
+
+			return read;
+		}
+	}
+}
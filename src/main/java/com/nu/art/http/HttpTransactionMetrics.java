@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import com.nu.art.http.consts.HttpMethod;
+
+/**
+ * The timing record of a completed transaction, all intervals are in nanoseconds and summed over the redirect hops.
+ */
+public final class HttpTransactionMetrics {
+
+	public final String executionPool;
+
+	public final String host;
+
+	public final HttpMethod method;
+
+	public final String tag;
+
+	/**
+	 * The response code of the final hop, or -1 if the transaction failed before receiving one
+	 */
+	public final int responseCode;
+
+	public final Throwable error;
+
+	public final int hops;
+
+	public final boolean fromCache;
+
+	/**
+	 * Whether this transaction was the hedge of a slow transaction, it won the race if it completed without an error
+	 */
+	public final boolean hedge;
+
+	public final long queueWaitInterval;
+
+	public final long connectionInterval;
+
+	public final long uploadInterval;
+
+	/**
+	 * The bytes of request body sent over all hops, before and after the body was encoded, see {@link IHttpRequest#setBodyEncoder}
+	 */
+	public final long bodyLength;
+
+	public final long encodedBodyLength;
+
+	public final long waitForServerInterval;
+
+	public final long downloadingAndProcessingInterval;
+
+	/**
+	 * From the moment the transaction started executing until it completed, excluding the queue wait
+	 */
+	public final long executionInterval;
+
+	HttpTransactionMetrics(String executionPool, String host, HttpMethod method, String tag, int responseCode, Throwable error, HttpModule.HoopTiming lastHoop, boolean hedge, long queueWaitInterval, long executionInterval) {
+		this.executionPool = executionPool;
+		this.host = host;
+		this.method = method;
+		this.tag = tag;
+		this.responseCode = responseCode;
+		this.error = error;
+		this.hedge = hedge;
+		this.queueWaitInterval = queueWaitInterval;
+		this.executionInterval = executionInterval;
+
+		int hops = 0;
+		long connectionInterval = 0;
+		long uploadInterval = 0;
+		long bodyLength = 0;
+		long encodedBodyLength = 0;
+		long waitForServerInterval = 0;
+		long downloadingAndProcessingInterval = 0;
+		for (HttpModule.HoopTiming hoop = lastHoop; hoop != null; hoop = hoop.redirectHoop) {
+			hops++;
+			connectionInterval += hoop.connectionInterval;
+			uploadInterval += hoop.uploadInterval;
+			bodyLength += hoop.bodyLength;
+			encodedBodyLength += hoop.encodedBodyLength;
+			waitForServerInterval += hoop.waitForServerInterval;
+			downloadingAndProcessingInterval += hoop.downloadingAndProcessingInterval;
+		}
+
+		this.hops = hops;
+		this.connectionInterval = connectionInterval;
+		this.uploadInterval = uploadInterval;
+		this.bodyLength = bodyLength;
+		this.encodedBodyLength = encodedBodyLength;
+		this.waitForServerInterval = waitForServerInterval;
+		this.downloadingAndProcessingInterval = downloadingAndProcessingInterval;
+		this.fromCache = lastHoop != null && lastHoop.fromCache;
+	}
+
+	public final long getTotalInterval() {
+		return queueWaitInterval + executionInterval;
+	}
+
+	/**
+	 * @return The length of the request body divided by its encoded length, 1 if it was sent as is or there was no body
+	 */
+	public final double getCompressionRatio() {
+		return encodedBodyLength == 0 ? 1 : (double) bodyLength / encodedBodyLength;
+	}
+
+	@Override
+	public String toString() {
+		return method + " " + host + (tag != null ? " [" + tag + "]" : "") + " -> " + responseCode + ", hops: " + hops + ", queue: " + queueWaitInterval + "ns, execution: " + executionInterval + "ns";
+	}
+}
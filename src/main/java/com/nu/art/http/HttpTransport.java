@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * The engine that moves the bytes of an {@link HttpRequest} over the wire.
+ *
+ * The transport is expected to return a connected {@link HttpConnection}, with the request headers already sent, and the request body (if any) ready
+ * to be written to its output stream. A body of an unknown {@link RequestBody#getContentLength() length} is expected to be sent chunked.
+ *
+ * The contract is blocking: a transaction holds the thread executing it from {@link #connect} until its response stream is consumed, and a
+ * transport built on a non-blocking client is adapted to it by blocking on the exchange, which may bring HTTP/2 but not fewer threads. To keep many
+ * more requests in flight than the platform threads of an execution pool, run it with {@link HttpModule.ExecutionPool#setVirtualThreads(boolean)
+ * virtual threads}.
+ */
+public interface HttpTransport {
+
+	/**
+	 * @param headers The headers to send, which may differ from those of the request, e.g. cache validators of the attempt
+	 */
+	HttpConnection connect(HttpRequest request, URL url, HttpHeaders headers, RequestBody body)
+		throws IOException;
+}
@@ -12,6 +12,7 @@ import com.nu.art.core.generics.Processor;
 import com.nu.art.core.interfaces.Getter;
 import com.nu.art.http.HttpModule.ExecutionPool;
 import com.nu.art.http.consts.HttpMethod;
+import com.nu.art.http.consts.HttpPriority;
 
 import java.io.InputStream;
 
@@ -26,8 +27,12 @@ public interface IHttpRequest {
 
 	IHttpRequest setExecutionPool(ExecutionPool executionPool);
 
+	IHttpRequest setTransport(HttpTransport transport);
+
 	IHttpRequest setUrl(String url);
 
+	IHttpRequest setTag(String tag);
+
 	IHttpRequest addUrlPath(String path);
 
 	IHttpRequest addHeader(String key, String value);
@@ -44,12 +49,74 @@ public interface IHttpRequest {
 
 	IHttpRequest setReadTimeout(int readTimeout);
 
+	/**
+	 * @param bodyAsInputStream Opens the stream of the body for every attempt. The length of a stream is unknown and the body is sent chunked, use
+	 *                          {@link RequestBody#of(Getter, long)} to declare its length.
+	 */
 	IHttpRequest setBody(Getter<InputStream> bodyAsInputStream);
 
+	/**
+	 * @param body A body of a known length, e.g. {@link RequestBody#of(java.io.File)}, sent without going through an {@link InputStream}.
+	 */
+	IHttpRequest setBody(RequestBody body);
+
+	/**
+	 * Compresses the body while it is sent, with a matching content-encoding header. The encoded body is sent chunked, and the upload progress
+	 * reports the encoded bytes with an unknown remainder. The server must accept the encoding.
+	 *
+	 * @param encoder   The codec, e.g. {@link BodyEncoder#GZip}, or null (the default) to send the body as is
+	 * @param minLength The min length in bytes of a body worth encoding, bodies of an unknown length are always encoded
+	 */
+	IHttpRequest setBodyEncoder(BodyEncoder encoder, int minLength);
+
 	IHttpRequest followRedirect(boolean followRedirect);
 
-	void execute(HttpResponseListener listener);
+	/**
+	 * The share of its execution pool this request gets while other requests are waiting, {@link HttpPriority#Normal} by default.
+	 */
+	IHttpRequest setPriority(HttpPriority priority);
+
+	/**
+	 * @param deadline The time in ms from the moment the request is executed, after which it is no longer of use. The deadline bounds the whole
+	 *                 transaction, queue wait, redirects, upload and download included: a request still waiting in the queue is dropped, a running
+	 *                 one is aborted, and either fails with a {@link HttpDeadlineExceededException}. 0 for no deadline.
+	 */
+	IHttpRequest setDeadline(int deadline);
+
+	/**
+	 * @param retryPolicy Overrides the default retry policy of the module for this request, see {@link HttpModule#setDefaultRetryPolicy}.
+	 */
+	IHttpRequest setRetryPolicy(RetryPolicy retryPolicy);
+
+	/**
+	 * @param hedgePolicy Sends an identical request when a GET request takes longer than the policy delay, null (the default) for no hedging.
+	 */
+	IHttpRequest setHedgePolicy(HedgePolicy hedgePolicy);
+
+	/**
+	 * Whether this request may be served from, and stored into, the response cache of the module, true by default.
+	 */
+	IHttpRequest setUseCache(boolean useCache);
+
+	/**
+	 * When enabled, concurrent identical GET requests (same url and same values for the given key headers) share a single network call, and every
+	 * listener receives the result.
+	 */
+	IHttpRequest setCoalescing(boolean coalescing, String... keyHeaders);
+
+	/**
+	 * @return A handle to cancel the request with.
+	 */
+	HttpRequestHandle execute(HttpResponseListener listener);
+
+	/**
+	 * @return a future completed with the response body converted to the given type, without blocking the calling thread.
+	 */
+	<ResponseType> HttpResponseFuture<ResponseType> executeAsync(Class<ResponseType> responseType);
 
 	InputStream executeSync()
 		throws Throwable;
+
+	InputStream executeSyncStream()
+		throws Throwable;
 }
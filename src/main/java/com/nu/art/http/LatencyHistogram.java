@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free log-linear histogram (in the spirit of HdrHistogram): every power of two range is split into 32 linear sub buckets, bounding the
+ * relative error of a recorded value to ~3%, over the whole positive long range with a fixed footprint.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class LatencyHistogram {
+
+	private static final int SubBucketBits = 5;
+
+	private static final int SubBucketCount = 1 << SubBucketBits;
+
+	private static final int LinearRange = SubBucketCount * 2;
+
+	private static final int BucketCount = LinearRange + (63 - SubBucketBits) * SubBucketCount;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BucketCount);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong sum = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	public final void record(long value) {
+		if (value < 0)
+			value = 0;
+
+		counts.incrementAndGet(indexOf(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+
+		long currentMax;
+		while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {}
+	}
+
+	public final long getCount() {
+		return count.get();
+	}
+
+	public final long getMax() {
+		return max.get();
+	}
+
+	public final double getMean() {
+		long count = this.count.get();
+		return count == 0 ? 0 : (double) sum.get() / count;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 *
+	 * @return The highest value equivalent to the value at the given percentile.
+	 */
+	public final long getValueAtPercentile(double percentile) {
+		long count = this.count.get();
+		if (count == 0)
+			return 0;
+
+		long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+		long accumulated = 0;
+		for (int i = 0; i < BucketCount; i++) {
+			accumulated += counts.get(i);
+			if (accumulated >= target)
+				return Math.min(highestValueOf(i), max.get());
+		}
+
+		return max.get();
+	}
+
+	public final void reset() {
+		for (int i = 0; i < BucketCount; i++) {
+			counts.set(i, 0);
+		}
+
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	static int indexOf(long value) {
+		if (value < LinearRange)
+			return (int) value;
+
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SubBucketBits;
+		return LinearRange + (shift - 1) * SubBucketCount + (int) ((value >>> shift) - SubBucketCount);
+	}
+
+	static long highestValueOf(int index) {
+		if (index < LinearRange)
+			return index;
+
+		int shift = (index - LinearRange) / SubBucketCount + 1;
+		long subBucket = (index - LinearRange) % SubBucketCount + SubBucketCount;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + ", mean=" + (long) getMean() + ", p50=" + getValueAtPercentile(50) + ", p90=" + getValueAtPercentile(90) + ", p99=" + getValueAtPercentile(99) + ", p99.9=" + getValueAtPercentile(99.9) + ", max=" + getMax();
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+/**
+ * An in-memory LRU {@link HttpCacheStore} bounded by the estimated size of its entries in bytes.
+ */
+public final class MemoryCacheStore
+	implements HttpCacheStore {
+
+	private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final long maxSize;
+
+	private long size;
+
+	public MemoryCacheStore(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	@Override
+	public synchronized CachedResponse get(String key) {
+		return entries.get(key);
+	}
+
+	@Override
+	public synchronized void put(String key, CachedResponse response) {
+		remove(key);
+
+		long entrySize = response.size();
+		if (entrySize > maxSize)
+			return;
+
+		entries.put(key, response);
+		size += entrySize;
+
+		Iterator<Entry<String, CachedResponse>> iterator = entries.entrySet().iterator();
+		while (size > maxSize && iterator.hasNext()) {
+			size -= iterator.next().getValue().size();
+			iterator.remove();
+		}
+	}
+
+	@Override
+	public synchronized void remove(String key) {
+		CachedResponse removed = entries.remove(key);
+		if (removed != null)
+			size -= removed.size();
+	}
+
+	@Override
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	public synchronized long getSize() {
+		return size;
+	}
+}
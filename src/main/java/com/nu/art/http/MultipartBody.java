@@ -1,90 +1,131 @@
 package com.nu.art.http;
 
-import com.nu.art.core.exceptions.runtime.BadImplementationException;
 import com.nu.art.core.interfaces.Getter;
 
-import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.SequenceInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
-import java.util.Vector;
 
-@SuppressWarnings("StringBufferReplaceableByString")
+/**
+ * Encodes parts as a multipart/form-data body, written straight to the connection.
+ *
+ * The delimiter and headers of every part are encoded once, when the body is set. The length of the body is exact when the length of every part
+ * is known, i.e. string, byte, file parts and streams of a declared length, otherwise the body is sent chunked.
+ */
 public class MultipartBody {
 
+	/**
+	 * @deprecated The part headers are no longer built from a template, the placeholder is left unused.
+	 */
+	@Deprecated
 	public static final String Key_FileName = "FILE_NAME";
 
+	/**
+	 * @deprecated The part headers are no longer built from a template, the placeholder is left unused.
+	 */
+	@Deprecated
 	public static final String Key_Name = "ITEM_NAME";
 
 	public static class Multipart {
 
 		final String name;
 
-		final Getter<InputStream> streamBody;
+		final RequestBody body;
 
 		final boolean isBinaryFile;
 
 		public Multipart(String name, boolean isBinaryFile, String streamBody) {
-			this(name, isBinaryFile, () -> new ByteArrayInputStream(streamBody.getBytes()));
+			this(name, isBinaryFile, RequestBody.of(streamBody.getBytes()));
 		}
 
+		/**
+		 * The length of the stream is unknown, which has the whole body sent chunked.
+		 */
 		public Multipart(String name, boolean isBinaryFile, Getter<InputStream> streamBody) {
+			this(name, isBinaryFile, RequestBody.of(streamBody, -1));
+		}
+
+		public Multipart(String name, boolean isBinaryFile, Getter<InputStream> streamBody, long length) {
+			this(name, isBinaryFile, RequestBody.of(streamBody, length));
+		}
+
+		public Multipart(String name, File file) {
+			this(name, true, RequestBody.of(file));
+		}
+
+		public Multipart(String name, boolean isBinaryFile, RequestBody body) {
 			this.name = name;
-			this.streamBody = streamBody;
+			this.body = body;
 			this.isBinaryFile = isBinaryFile;
 		}
 	}
 
+	private static final String LineEnd = "\r\n";
+
+	private static final String TwoHyphens = "--";
+
 	public void setMultipart(IHttpRequest request, Multipart... parts) {
-		String lineEnd = "\r\n";
-		String twoHyphens = "--";
 		String boundary = UUID.randomUUID().toString();
+		request.setBody(new MultipartRequestBody(boundary, parts)) //
+		       .addHeader("Connection", "Keep-Alive") //
+		       .addHeader("ENCTYPE", "multipart/form-data") //
+		       .addHeader("Content-Type", "multipart/form-data;boundary=" + boundary); //
+	}
+
+	private static final class MultipartRequestBody
+		extends RequestBody {
+
+		private final Multipart[] parts;
 
-		StringBuilder multipartStart = new StringBuilder();
-		multipartStart.append(lineEnd).append(twoHyphens).append(boundary).append(lineEnd);
-
-		multipartStart.append("Content-Disposition: form-data; name=\"" + Key_Name + "\"" + Key_FileName).append(lineEnd);
-		multipartStart.append(lineEnd);
-
-		StringBuilder multipartEnd = new StringBuilder();
-		multipartEnd.append(lineEnd).append(twoHyphens).append(boundary).append(twoHyphens).append(lineEnd);
-
-		String start = multipartStart.toString();
-		request.setBody(() -> {
-			Vector<InputStream> inputStreams = new Vector<>();
-			int lengthAvailable = 0;
-			for (Multipart part : parts) {
-				String replace = start.replace(Key_Name, part.name);
-				replace = replace.replace(Key_FileName, part.isBinaryFile ? "; filename=\"" + part.name + "\"" : "");
-
-				byte[] multipartStartBytes = replace.getBytes();
-				ByteArrayInputStream is = new ByteArrayInputStream(multipartStartBytes);
-				InputStream streamBody = part.streamBody.get();
-				try {
-					lengthAvailable += multipartStartBytes.length + streamBody.available();
-				} catch (IOException e) {
-					throw new BadImplementationException("part stream length is not available");
-				}
-				inputStreams.add(is);
-				inputStreams.add(streamBody);
+		private final byte[][] partHeaders;
+
+		private final byte[] end;
+
+		private MultipartRequestBody(String boundary, Multipart[] parts) {
+			this.parts = parts.clone();
+			partHeaders = new byte[parts.length][];
+			for (int i = 0; i < parts.length; i++) {
+				Multipart part = parts[i];
+				StringBuilder header = new StringBuilder();
+				header.append(LineEnd).append(TwoHyphens).append(boundary).append(LineEnd);
+				header.append("Content-Disposition: form-data; name=\"").append(part.name).append("\"");
+				if (part.isBinaryFile)
+					header.append("; filename=\"").append(part.name).append("\"");
+				header.append(LineEnd).append(LineEnd);
+
+				partHeaders[i] = header.toString().getBytes(StandardCharsets.UTF_8);
 			}
 
-			byte[] bytes = multipartEnd.toString().getBytes();
-			lengthAvailable += bytes.length;
-			inputStreams.add(new ByteArrayInputStream(bytes));
+			end = (LineEnd + TwoHyphens + boundary + TwoHyphens + LineEnd).getBytes(StandardCharsets.UTF_8);
+		}
 
-			final int finalLengthAvailable = lengthAvailable;
+		@Override
+		public long getContentLength()
+			throws IOException {
+			long length = end.length;
+			for (int i = 0; i < parts.length; i++) {
+				long partLength = parts[i].body.getContentLength();
+				if (partLength == -1)
+					return -1;
 
-			return (InputStream) new SequenceInputStream(inputStreams.elements()) {
-				@Override
-				public int available() {
-					return finalLengthAvailable;
-				}
-			};
-		}) //
-		       .addHeader("Connection", "Keep-Alive") //
-		       .addHeader("ENCTYPE", "multipart/form-data") //
-		       .addHeader("Content-Type", "multipart/form-data;boundary=" + boundary); //
+				length += partHeaders[i].length + partLength;
+			}
+
+			return length;
+		}
+
+		@Override
+		public void writeTo(OutputStream outputStream)
+			throws IOException {
+			for (int i = 0; i < parts.length; i++) {
+				outputStream.write(partHeaders[i]);
+				parts[i].body.writeTo(outputStream);
+			}
+
+			outputStream.write(end);
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import com.nu.art.core.interfaces.Getter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The body of a request, written to the connection once per attempt, so the same body may be sent again on a redirect or a retry.
+ *
+ * Except for streams of an undeclared length, the bodies created here know their exact length up front. They copy through buffers of the
+ * {@link BufferPool}: a file is read from its {@link FileChannel} at explicit positions, and a {@link ByteBuffer}, e.g. a
+ * {@link java.nio.MappedByteBuffer} of a memory-mapped file, is written straight from its backing array when it has one.
+ */
+@SuppressWarnings( {
+	                   "unused",
+	                   "WeakerAccess"
+                   })
+public abstract class RequestBody
+	implements Closeable {
+
+	public static final int BufferSize = 64 * 1024;
+
+	public static RequestBody of(File file) {
+		return new FileBody(file);
+	}
+
+	/**
+	 * The channel is read at explicit positions, so its own position is left untouched, and it is not closed by the request.
+	 *
+	 * @param position The position in the channel the body starts at
+	 * @param length   The number of bytes to send
+	 */
+	public static RequestBody of(FileChannel channel, long position, long length) {
+		return new ChannelBody(channel, position, length);
+	}
+
+	/**
+	 * The remaining bytes of the buffer are sent, its position and limit are left untouched.
+	 */
+	public static RequestBody of(ByteBuffer buffer) {
+		return new ByteBufferBody(buffer);
+	}
+
+	public static RequestBody of(byte[] bytes) {
+		return new ByteBufferBody(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * A stream is opened for every attempt, and closed once it was fully written.
+	 *
+	 * @param length The exact length of the streams, or -1 if unknown, in which case the body is sent chunked
+	 */
+	public static RequestBody of(Getter<InputStream> streamGetter, long length) {
+		return new StreamGetterBody(streamGetter, length);
+	}
+
+	/**
+	 * A body read from a stream opened for a single attempt, sent chunked as the length of a stream is unknown. The bytes a stream reports as
+	 * available are only those that can be read without blocking.
+	 */
+	static RequestBody of(InputStream inputStream) {
+		return new InputStreamBody(inputStream);
+	}
+
+	/**
+	 * @return The exact length of the body in bytes, or -1 if it is unknown and the body is to be sent chunked.
+	 */
+	public abstract long getContentLength()
+		throws IOException;
+
+	/**
+	 * Writes the whole body to the connection, does not close the given stream.
+	 */
+	public abstract void writeTo(OutputStream outputStream)
+		throws IOException;
+
+	/**
+	 * Releases whatever this body holds for the current attempt, called once the request completed.
+	 */
+	@Override
+	public void close()
+		throws IOException {}
+
+	private static final class FileBody
+		extends RequestBody {
+
+		private final File file;
+
+		private FileBody(File file) {
+			this.file = file;
+		}
+
+		@Override
+		public long getContentLength() {
+			return file.length();
+		}
+
+		@Override
+		public void writeTo(OutputStream outputStream)
+			throws IOException {
+			try (FileInputStream inputStream = new FileInputStream(file)) {
+				FileChannel channel = inputStream.getChannel();
+				copy(channel, 0, channel.size(), outputStream);
+			}
+		}
+	}
+
+	private static final class ChannelBody
+		extends RequestBody {
+
+		private final FileChannel channel;
+
+		private final long position;
+
+		private final long length;
+
+		private ChannelBody(FileChannel channel, long position, long length) {
+			this.channel = channel;
+			this.position = position;
+			this.length = length;
+		}
+
+		@Override
+		public long getContentLength() {
+			return length;
+		}
+
+		@Override
+		public void writeTo(OutputStream outputStream)
+			throws IOException {
+			copy(channel, position, length, outputStream);
+		}
+	}
+
+	private static final class ByteBufferBody
+		extends RequestBody {
+
+		private final ByteBuffer buffer;
+
+		private ByteBufferBody(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public long getContentLength() {
+			return buffer.remaining();
+		}
+
+		@Override
+		public void writeTo(OutputStream outputStream)
+			throws IOException {
+			ByteBuffer source = buffer.duplicate();
+			if (source.hasArray()) {
+				byte[] array = source.array();
+				int offset = source.arrayOffset() + source.position();
+				int end = offset + source.remaining();
+				for (int length; offset < end; offset += length) {
+					length = Math.min(BufferSize, end - offset);
+					outputStream.write(array, offset, length);
+				}
+				return;
+			}
+
+			byte[] buffer = BufferPool.Instance.acquire(Math.min(BufferPool.Instance.getBufferSize(), source.remaining()));
+			try {
+				while (source.hasRemaining()) {
+					int length = Math.min(buffer.length, source.remaining());
+					source.get(buffer, 0, length);
+					outputStream.write(buffer, 0, length);
+				}
+			} finally {
+				BufferPool.Instance.release(buffer);
+			}
+		}
+	}
+
+	private static final class InputStreamBody
+		extends RequestBody {
+
+		private final InputStream inputStream;
+
+		private InputStreamBody(InputStream inputStream) {
+			this.inputStream = inputStream;
+		}
+
+		@Override
+		public long getContentLength() {
+			return -1;
+		}
+
+		@Override
+		public void writeTo(OutputStream outputStream)
+			throws IOException {
+			copy(inputStream, outputStream);
+		}
+
+		@Override
+		public void close()
+			throws IOException {
+			inputStream.close();
+		}
+	}
+
+	private static final class StreamGetterBody
+		extends RequestBody {
+
+		private final Getter<InputStream> streamGetter;
+
+		private final long length;
+
+		private StreamGetterBody(Getter<InputStream> streamGetter, long length) {
+			this.streamGetter = streamGetter;
+			this.length = length;
+		}
+
+		@Override
+		public long getContentLength() {
+			return length;
+		}
+
+		@Override
+		public void writeTo(OutputStream outputStream)
+			throws IOException {
+			try (InputStream inputStream = streamGetter.get()) {
+				long written = copy(inputStream, outputStream);
+				if (length != -1 && written != length)
+					throw new IOException("Stream had " + written + " bytes, while the declared length of the body is " + length);
+			}
+		}
+	}
+
+	private static long copy(InputStream inputStream, OutputStream outputStream)
+		throws IOException {
+		return BufferPool.Instance.copy(inputStream, outputStream);
+	}
+
+	private static void copy(FileChannel channel, long position, long length, OutputStream outputStream)
+		throws IOException {
+		byte[] array = BufferPool.Instance.acquire((int) Math.min(BufferPool.Instance.getBufferSize(), length));
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(array);
+			long end = position + length;
+			while (position < end) {
+				buffer.clear();
+				if (end - position < buffer.capacity())
+					buffer.limit((int) (end - position));
+
+				int read = channel.read(buffer, position);
+				if (read == -1)
+					throw new IOException("File ended " + (end - position) + " bytes before the declared length of the body");
+
+				outputStream.write(array, 0, read);
+				position += read;
+			}
+		} finally {
+			BufferPool.Instance.release(array);
+		}
+	}
+}
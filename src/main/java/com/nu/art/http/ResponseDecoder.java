@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Decodes response bodies of a content-encoding, see {@link HttpModule#addResponseDecoder(ResponseDecoder)}.
+ *
+ * The gzip and deflate decoders inflate through {@link #BufferSize} buffers of the {@link BufferPool}, with {@link Inflater} instances pooled
+ * across responses, both returned to their pools when the response stream is closed. The deflate decoder accepts both zlib wrapped and raw
+ * deflate bodies, as servers send either.
+ */
+@SuppressWarnings( {
+	                   "unused",
+	                   "WeakerAccess"
+                   })
+public abstract class ResponseDecoder {
+
+	public static final int BufferSize = 16 * 1024;
+
+	private static final int MaxPooledInflaters = 32;
+
+	private static final ArrayDeque<Inflater> inflaters = new ArrayDeque<>();
+
+	public static final ResponseDecoder GZip = new ResponseDecoder("gzip") {
+		@Override
+		public InputStream decode(InputStream inputStream)
+			throws IOException {
+			int first = inputStream.read();
+			if (first == -1)
+				return inputStream;
+
+			if (first != 0x1f || inputStream.read() != 0x8b)
+				throw new ZipException("Not in GZIP format");
+
+			readGZipHeader(inputStream);
+			return new InflatingStream(inputStream, obtainInflater(), new CRC32(), 8);
+		}
+	};
+
+	public static final ResponseDecoder Deflate = new ResponseDecoder("deflate") {
+		@Override
+		public InputStream decode(InputStream inputStream)
+			throws IOException {
+			int first = inputStream.read();
+			if (first == -1)
+				return inputStream;
+
+			int second = readByte(inputStream);
+			boolean zlib = (first & 0x0f) == 8 && (first >> 4) <= 7 && ((first << 8) | second) % 31 == 0;
+			if (zlib && (second & 0x20) != 0)
+				throw new ZipException("Deflate bodies with a preset dictionary are not supported");
+
+			Inflater inflater = obtainInflater();
+			if (zlib)
+				return new InflatingStream(inputStream, inflater, new Adler32(), 4);
+
+			// the two bytes read belong to the raw deflate data
+			inflater.setInput(new byte[]{
+				(byte) first,
+				(byte) second
+			});
+			return new InflatingStream(inputStream, inflater, null, 0);
+		}
+	};
+
+	private final String name;
+
+	protected ResponseDecoder(String name) {
+		this.name = name.toLowerCase();
+	}
+
+	/**
+	 * @return The content-encoding token of the codec, e.g. gzip
+	 */
+	public final String getName() {
+		return name;
+	}
+
+	/**
+	 * @param inputStream The encoded response stream
+	 *
+	 * @return A stream of the decoded body, closing it must release the codec and close the given stream.
+	 */
+	public abstract InputStream decode(InputStream inputStream)
+		throws IOException;
+
+	/**
+	 * Decodes the stream by the codings of the content-encoding header, in reverse of the order they were applied. A coding with no registered
+	 * decoder leaves the stream as is from that coding on.
+	 */
+	static InputStream decode(Map<String, ResponseDecoder> decoders, String contentEncoding, InputStream inputStream)
+		throws IOException {
+		if (contentEncoding == null)
+			return inputStream;
+
+		String[] codings = contentEncoding.split(",");
+		for (int i = codings.length - 1; i >= 0; i--) {
+			String coding = codings[i].trim().toLowerCase();
+			if (coding.isEmpty() || coding.equals("identity"))
+				continue;
+
+			ResponseDecoder decoder = decoders.get(coding);
+			if (decoder == null)
+				return inputStream;
+
+			inputStream = decoder.decode(inputStream);
+		}
+
+		return inputStream;
+	}
+
+	private static Inflater obtainInflater() {
+		synchronized (inflaters) {
+			Inflater inflater = inflaters.poll();
+			if (inflater != null)
+				return inflater;
+		}
+
+		// the wrappers are parsed here, so the same inflater serves both gzip and deflate
+		return new Inflater(true);
+	}
+
+	private static void releaseInflater(Inflater inflater) {
+		inflater.reset();
+		synchronized (inflaters) {
+			if (inflaters.size() < MaxPooledInflaters) {
+				inflaters.push(inflater);
+				return;
+			}
+		}
+
+		inflater.end();
+	}
+
+	/**
+	 * RFC 1952: reads the header of a member that follows its magic bytes, the method, flags, mtime(4), extra flags and os, and the optional
+	 * fields the flags declare.
+	 */
+	private static void readGZipHeader(InputStream inputStream)
+		throws IOException {
+		if (readByte(inputStream) != 8)
+			throw new ZipException("Unsupported compression method");
+
+		int flags = readByte(inputStream);
+		skip(inputStream, 6);
+		if ((flags & 4) != 0)
+			skip(inputStream, readByte(inputStream) | readByte(inputStream) << 8);
+
+		if ((flags & 8) != 0)
+			while (readByte(inputStream) != 0) {}
+
+		if ((flags & 16) != 0)
+			while (readByte(inputStream) != 0) {}
+
+		if ((flags & 2) != 0)
+			skip(inputStream, 2);
+	}
+
+	private static int readByte(InputStream inputStream)
+		throws IOException {
+		int b = inputStream.read();
+		if (b == -1)
+			throw new EOFException("Unexpected end of the encoded body");
+
+		return b;
+	}
+
+	private static void skip(InputStream inputStream, int count)
+		throws IOException {
+		for (int i = 0; i < count; i++) {
+			readByte(inputStream);
+		}
+	}
+
+	/**
+	 * Inflates a deflate stream, and verifies the trailer following it against the checksum and the length of the inflated bytes. A gzip body may
+	 * hold several members, each inflated in turn.
+	 */
+	private static final class InflatingStream
+		extends InflaterInputStream {
+
+		private final Checksum checksum;
+
+		private final int trailerLength;
+
+		private long inflated;
+
+		private boolean ended;
+
+		private boolean released;
+
+		private InflatingStream(InputStream inputStream, Inflater inflater, Checksum checksum, int trailerLength) {
+			// the input buffer allocated by the super constructor is replaced by a pooled one
+			super(inputStream, inflater, 1);
+			buf = BufferPool.Instance.acquire(BufferSize);
+			this.checksum = checksum;
+			this.trailerLength = trailerLength;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length)
+			throws IOException {
+			while (!ended) {
+				int read = super.read(buffer, offset, length);
+				if (read != -1) {
+					if (checksum != null)
+						checksum.update(buffer, offset, read);
+
+					inflated += read;
+					return read;
+				}
+
+				if (inf.needsDictionary())
+					throw new ZipException("Deflate bodies with a preset dictionary are not supported");
+
+				ended = !endMember();
+			}
+
+			return -1;
+		}
+
+		/**
+		 * Verifies the trailer of the member that was inflated.
+		 *
+		 * @return true if another gzip member follows, which the inflater is now set to inflate.
+		 */
+		private boolean endMember()
+			throws IOException {
+			if (trailerLength == 0)
+				return false;
+
+			// the trailer starts with the input the inflater left unused
+			int remaining = inf.getRemaining();
+			ByteArrayInputStream buffered = new ByteArrayInputStream(buf, len - remaining, remaining);
+			InputStream source = new SequenceInputStream(buffered, in);
+			byte[] trailer = new byte[trailerLength];
+			for (int i = 0; i < trailerLength; i++) {
+				trailer[i] = (byte) readByte(source);
+			}
+
+			if (trailerLength == 4) {
+				if (readInt(trailer, 0, true) != checksum.getValue())
+					throw new ZipException("Corrupt ZLIB trailer, checksum mismatch");
+
+				return false;
+			}
+
+			if (readInt(trailer, 0, false) != checksum.getValue())
+				throw new ZipException("Corrupt GZIP trailer, checksum mismatch");
+
+			if (readInt(trailer, 4, false) != (inflated & 0xffffffffL))
+				throw new ZipException("Corrupt GZIP trailer, length mismatch");
+
+			// like GZIPInputStream, bytes following the last member that are not another member are ignored
+			if (source.read() != 0x1f || source.read() != 0x8b)
+				return false;
+
+			readGZipHeader(source);
+			inf.reset();
+			checksum.reset();
+			inflated = 0;
+
+			int left = buffered.available();
+			inf.setInput(buf, len - left, left);
+			return true;
+		}
+
+		private static long readInt(byte[] bytes, int offset, boolean bigEndian) {
+			long value = 0;
+			for (int i = 0; i < 4; i++) {
+				int b = bytes[offset + (bigEndian ? i : 3 - i)] & 0xff;
+				value = value << 8 | b;
+			}
+
+			return value;
+		}
+
+		@Override
+		public void close()
+			throws IOException {
+			if (released)
+				return;
+
+			released = true;
+			try {
+				super.close();
+			} finally {
+				releaseInflater(inf);
+				BufferPool.Instance.release(buf);
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+/**
+ * Caps the retries of the module relative to its traffic, so that retries cannot multiply the load on a struggling backend.
+ *
+ * Every request earns {@link #setRatio(double) ratio} of a retry, and a retry is only allowed while there are earned retries left. On top of that a
+ * small number of retries per second is always allowed, so that low traffic can still recover from transient failures.
+ */
+@SuppressWarnings( {
+	                   "unused",
+	                   "WeakerAccess"
+                   })
+public final class RetryBudget {
+
+	private double ratio = 0.1;
+
+	private int minPerSecond = 10;
+
+	private double maxBalance = 100;
+
+	private double balance;
+
+	private long currentSecond;
+
+	private int usedThisSecond;
+
+	private long requests;
+
+	private long retries;
+
+	private long rejected;
+
+	/**
+	 * @param ratio The share of the requests that may be retried, 0.1 by default.
+	 */
+	public synchronized RetryBudget setRatio(double ratio) {
+		this.ratio = ratio;
+		return this;
+	}
+
+	/**
+	 * @param minPerSecond The number of retries per second allowed regardless of the ratio, 10 by default.
+	 */
+	public synchronized RetryBudget setMinPerSecond(int minPerSecond) {
+		this.minPerSecond = minPerSecond;
+		return this;
+	}
+
+	/**
+	 * @param maxBalance The max number of earned retries that may be accumulated, 100 by default.
+	 */
+	public synchronized RetryBudget setMaxBalance(double maxBalance) {
+		this.maxBalance = maxBalance;
+		return this;
+	}
+
+	final synchronized void onRequest() {
+		requests++;
+		balance = Math.min(maxBalance, balance + ratio);
+	}
+
+	final synchronized boolean tryAcquire() {
+		long second = System.nanoTime() / 1000000000L;
+		if (second != currentSecond) {
+			currentSecond = second;
+			usedThisSecond = 0;
+		}
+
+		if (usedThisSecond < minPerSecond)
+			usedThisSecond++;
+		else if (balance >= 1)
+			balance--;
+		else {
+			rejected++;
+			return false;
+		}
+
+		retries++;
+		return true;
+	}
+
+	public synchronized long getRequests() {
+		return requests;
+	}
+
+	public synchronized long getRetries() {
+		return retries;
+	}
+
+	/**
+	 * @return The number of retries that were not attempted because the budget was exhausted.
+	 */
+	public synchronized long getRejected() {
+		return rejected;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "requests=" + requests + ", retries=" + retries + ", rejected=" + rejected + ", balance=" + balance;
+	}
+}
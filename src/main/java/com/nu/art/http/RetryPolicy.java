@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import com.nu.art.http.consts.HttpMethod;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether, and when, a failed request is attempted again.
+ *
+ * By default a request is attempted up to 3 times, and only when its method is idempotent. A retry follows a response with one of the retryable
+ * status codes, or an {@link IOException} that is not one of the exceptions this module raises by choice (deadlines, rejections, open circuits,
+ * cancellations). A failure is never retried once the response was handed to the listener, which may have acted on part of it.
+ *
+ * The delay before attempt n is drawn at random between 0 and min(maxBackoff, initialBackoff * multiplier^(n-1)), or is the Retry-After of the
+ * response when longer. A Retry-After beyond maxBackoff is honored by not retrying at all, rather than retrying before the server is ready.
+ */
+@SuppressWarnings( {
+	                   "unused",
+	                   "WeakerAccess"
+                   })
+public class RetryPolicy {
+
+	private int maxAttempts = 3;
+
+	private long initialBackoff = 100;
+
+	private long maxBackoff = 10000;
+
+	private double multiplier = 2;
+
+	private boolean retryNonIdempotent;
+
+	private int[] retryableStatuses = {
+		408,
+		429,
+		502,
+		503,
+		504
+	};
+
+	private Class<? extends Throwable>[] retryableExceptions = asArray(IOException.class);
+
+	/**
+	 * @param maxAttempts The max number of attempts, including the first one.
+	 */
+	public RetryPolicy setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+		return this;
+	}
+
+	/**
+	 * @param initialBackoff The upper bound of the delay in ms before the first retry
+	 * @param maxBackoff     The upper bound of the delay in ms before any retry
+	 * @param multiplier     The factor the upper bound grows by with every retry
+	 */
+	public RetryPolicy setBackoff(long initialBackoff, long maxBackoff, double multiplier) {
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = Math.max(initialBackoff, maxBackoff);
+		this.multiplier = Math.max(1, multiplier);
+		return this;
+	}
+
+	/**
+	 * A non-idempotent request (e.g. a POST) might have been processed even though it failed, only retry it if the server de-duplicates requests.
+	 */
+	public RetryPolicy setRetryNonIdempotent(boolean retryNonIdempotent) {
+		this.retryNonIdempotent = retryNonIdempotent;
+		return this;
+	}
+
+	public RetryPolicy setRetryableStatuses(int... retryableStatuses) {
+		this.retryableStatuses = retryableStatuses;
+		return this;
+	}
+
+	@SafeVarargs
+	public final RetryPolicy setRetryableExceptions(Class<? extends Throwable>... retryableExceptions) {
+		this.retryableExceptions = retryableExceptions;
+		return this;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public boolean isRetryable(HttpMethod method) {
+		return method.idempotent || retryNonIdempotent;
+	}
+
+	public boolean isRetryable(Throwable e) {
+		if (e instanceof HttpException) {
+			HttpResponse response = ((HttpException) e).response;
+			return response != null && isRetryableStatus(response.responseCode);
+		}
+
+		if (e instanceof HttpDeadlineExceededException || e instanceof ConcurrencyLimitExceededException || e instanceof CircuitOpenException || e instanceof HttpCancelledException)
+			return false;
+
+		for (Class<? extends Throwable> exceptionType : retryableExceptions) {
+			if (exceptionType.isInstance(e))
+				return true;
+		}
+
+		return false;
+	}
+
+	public boolean isRetryableStatus(int responseCode) {
+		for (int retryableStatus : retryableStatuses) {
+			if (retryableStatus == responseCode)
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * @param retry      The index of the retry, starting at 1
+	 * @param retryAfter The delay in ms the server asked for, or -1
+	 *
+	 * @return The delay in ms before the retry, or -1 if the server asked for a longer delay than maxBackoff.
+	 */
+	public long getBackoff(int retry, long retryAfter) {
+		if (retryAfter > maxBackoff)
+			return -1;
+
+		double bound = Math.min(maxBackoff, initialBackoff * Math.pow(multiplier, retry - 1));
+		long backoff = (long) (ThreadLocalRandom.current().nextDouble() * bound);
+		return Math.max(backoff, retryAfter);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Class<? extends Throwable>[] asArray(Class<? extends Throwable> exceptionType) {
+		return new Class[]{exceptionType};
+	}
+}
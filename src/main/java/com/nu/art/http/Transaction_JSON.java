@@ -2,8 +2,14 @@ package com.nu.art.http;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.nu.art.core.file.Charsets;
 import com.nu.art.http.HttpModule.BaseTransaction;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
 /**
  * Created by TacB0sS on 16-Sep 2017.
  */
@@ -38,9 +44,51 @@ public class Transaction_JSON
 			return gson.fromJson(responseAsString, type);
 		}
 
+		@Override
+		protected <Type> Type deserialize(Class<Type> type, InputStream inputStream)
+			throws IOException {
+			return gson.fromJson(createReader(inputStream), type);
+		}
+
+		final JsonReader createReader(InputStream inputStream)
+			throws IOException {
+			return new JsonReader(new InputStreamReader(inputStream, Charsets.UTF_8.encoding));
+		}
+
 		@Override
 		public void onError(HttpResponse httpResponse, String errorAsString) {
 
 		}
 	}
+
+	/**
+	 * Streams a JSON array response, handing each element to {@link #onItem(Object)} as soon as it is parsed, and calls
+	 * {@link #onSuccess(HttpResponse, Object)} once the array is fully consumed.
+	 */
+	public static abstract class JsonArrayHttpResponseListener<Item>
+		extends JsonHttpResponseListener<Void> {
+
+		private final Class<Item> itemType;
+
+		protected JsonArrayHttpResponseListener(Class<Item> itemType) {
+			super(Void.class);
+			this.itemType = itemType;
+			setStreaming(true);
+		}
+
+		@Override
+		protected <Type> Type deserialize(Class<Type> type, InputStream inputStream)
+			throws IOException {
+			JsonReader reader = createReader(inputStream);
+			reader.beginArray();
+			while (reader.hasNext()) {
+				Item item = gson.fromJson(reader, itemType);
+				onItem(item);
+			}
+			reader.endArray();
+			return null;
+		}
+
+		protected abstract void onItem(Item item);
+	}
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The default blocking {@link HttpTransport}, backed by the JDK {@link HttpURLConnection}.
+ */
+public final class UrlConnectionTransport
+	implements HttpTransport {
+
+	public static final UrlConnectionTransport Instance = new UrlConnectionTransport();
+
+	private UrlConnectionTransport() {}
+
+	@Override
+	public HttpConnection connect(HttpRequest request, URL url, HttpHeaders headers, RequestBody body)
+		throws IOException {
+		return new UrlConnection(request.connect(url, headers, body));
+	}
+
+	static final class UrlConnection
+		implements HttpConnection {
+
+		final HttpURLConnection connection;
+
+		UrlConnection(HttpURLConnection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		public OutputStream getOutputStream()
+			throws IOException {
+			return connection.getOutputStream();
+		}
+
+		@Override
+		public int getResponseCode()
+			throws IOException {
+			return connection.getResponseCode();
+		}
+
+		@Override
+		public Map<String, List<String>> getHeaderFields() {
+			return connection.getHeaderFields();
+		}
+
+		@Override
+		public InputStream getInputStream()
+			throws IOException {
+			return connection.getInputStream();
+		}
+
+		@Override
+		public InputStream getErrorStream() {
+			return connection.getErrorStream();
+		}
+
+		@Override
+		public void release() {
+			// closing the streams hands the socket back to the JDK keep-alive cache, disconnecting would close it
+			InputStream inputStream;
+			try {
+				inputStream = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream();
+			} catch (IOException e) {
+				connection.disconnect();
+				return;
+			}
+
+			if (inputStream == null)
+				return;
+
+			try {
+				inputStream.close();
+			} catch (IOException e) {
+				connection.disconnect();
+			}
+		}
+
+		@Override
+		public void disconnect() {
+			connection.disconnect();
+		}
+	}
+}
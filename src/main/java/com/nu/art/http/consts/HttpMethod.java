@@ -8,20 +8,27 @@
 package com.nu.art.http.consts;
 
 public enum HttpMethod {
-	Get("GET", false),
-	Post("POST", true),
-	Put("PUT", true),
-	Patch("PATCH", true),
-	Delete("DELETE", false),
+	Get("GET", false, true),
+	Post("POST", true, false),
+	Put("PUT", true, true),
+	Patch("PATCH", true, false),
+	Delete("DELETE", false, true),
+	Head("HEAD", false, true),
 	;
 
 	public final String method;
 
 	public final boolean hasBody;
 
-	HttpMethod(String method, boolean hasBody) {
+	/**
+	 * Whether repeating the request has the same effect as sending it once, which makes it safe to retry.
+	 */
+	public final boolean idempotent;
+
+	HttpMethod(String method, boolean hasBody, boolean idempotent) {
 		this.method = method;
 		this.hasBody = hasBody;
+		this.idempotent = idempotent;
 	}
 
 }
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2016 to Adam van der Kruk (Zehavi) AKA TacB0sS - Nu-Art
+ *
+ * Restricted usage under specific license
+ *
+ */
+
+package com.nu.art.http.consts;
+
+/**
+ * The share of its execution pool a request gets while other requests are waiting, relative to the other priorities.
+ */
+public enum HttpPriority {
+	Background(1),
+	Low(4),
+	Normal(16),
+	High(64),
+	Interactive(256),
+	;
+
+	public final int weight;
+
+	HttpPriority(int weight) {
+		this.weight = weight;
+	}
+}
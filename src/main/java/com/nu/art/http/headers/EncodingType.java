@@ -9,6 +9,7 @@ import com.nu.art.http.interfaces.HeaderType;
 public enum EncodingType
 	implements HeaderType {
 	GZip("gzip"),
+	Deflate("deflate"),
 	//
 	;
 
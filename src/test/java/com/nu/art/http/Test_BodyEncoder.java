@@ -0,0 +1,192 @@
+package com.nu.art.http;
+
+import com.nu.art.belog.BeLogged;
+import com.nu.art.core.interfaces.Getter;
+import com.nu.art.http.consts.HttpMethod;
+import com.nu.art.modular.core.ModuleManagerBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static com.nu.art.belog.loggers.JavaLogger.Config_FastJavaLogger;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class Test_BodyEncoder {
+
+	private static final int MinLength = 1000;
+
+	/**
+	 * The content-encoding and the decoded body of every request the server received
+	 */
+	private final List<String> encodings = new CopyOnWriteArrayList<>();
+
+	private final List<byte[]> bodies = new CopyOnWriteArrayList<>();
+
+	/**
+	 * The body sent by the next attempt, the server swaps it for a smaller one when it fails the first attempt
+	 */
+	private volatile byte[] body = createData(10 * MinLength);
+
+	private HttpServer server;
+
+	class Transaction_Upload
+		extends HttpModule.BaseTransaction {
+
+		HttpRequest upload() {
+			return (HttpRequest) createRequest().setUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/upload").setMethod(HttpMethod.Put);
+		}
+	}
+
+	private static byte[] createData(int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) (i % 31);
+		}
+
+		return data;
+	}
+
+	private static byte[] encode(BodyEncoder encoder, RequestBody body)
+		throws IOException {
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		RequestBody encodedBody = new BodyEncoder.EncodedBody(body, encoder);
+		encodedBody.writeTo(encoded);
+		return encoded.toByteArray();
+	}
+
+	private static byte[] readAll(InputStream inputStream)
+		throws IOException {
+		ByteArrayOutputStream read = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		for (int length; (length = inputStream.read(buffer)) != -1; ) {
+			read.write(buffer, 0, length);
+		}
+
+		return read.toByteArray();
+	}
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp()
+		throws IOException {
+		BeLogged.getInstance().setConfig(Config_FastJavaLogger);
+		new ModuleManagerBuilder().addModules(HttpModule.class).build();
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange)
+				throws IOException {
+				String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+				InputStream inputStream = exchange.getRequestBody();
+				if ("gzip".equals(encoding))
+					inputStream = new GZIPInputStream(inputStream);
+
+				encodings.add(String.valueOf(encoding));
+				bodies.add(readAll(inputStream));
+				if (encodings.size() == 1)
+					body = createData(MinLength / 2);
+
+				exchange.sendResponseHeaders(encodings.size() == 1 ? 503 : 200, -1);
+				exchange.close();
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void test_roundTrip()
+		throws IOException {
+		byte[] data = createData(5 * RequestBody.BufferSize + 7);
+		assertArrayEquals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(encode(BodyEncoder.GZip, RequestBody.of(data))))));
+		assertArrayEquals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(encode(BodyEncoder.gzip(Deflater.BEST_SPEED), RequestBody.of(data))))));
+		assertArrayEquals(data, readAll(new InflaterInputStream(new ByteArrayInputStream(encode(BodyEncoder.Deflate, RequestBody.of(data))))));
+
+		BodyEncoder.EncodedBody encodedBody = new BodyEncoder.EncodedBody(RequestBody.of(data), BodyEncoder.GZip);
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		encodedBody.writeTo(encoded);
+		assertEquals(-1, encodedBody.getContentLength());
+		assertEquals(data.length, encodedBody.getDecodedLength());
+		assertTrue(encoded.size() < data.length);
+	}
+
+	@Test
+	public void test_threshold()
+		throws IOException {
+		HttpRequest request = new Transaction_Upload().upload();
+		request.setBodyEncoder(BodyEncoder.GZip, MinLength);
+
+		RequestBody small = RequestBody.of(createData(MinLength - 1));
+		request.setBody(small);
+		assertSame(small, request.openBody());
+
+		request.setBody(RequestBody.of(createData(MinLength)));
+		assertTrue(request.openBody() instanceof BodyEncoder.EncodedBody);
+
+		// a stream of an unknown length may be large
+		request.setBody(RequestBody.of(new Getter<InputStream>() {
+			@Override
+			public InputStream get() {
+				return new ByteArrayInputStream(new byte[1]);
+			}
+		}, -1));
+		assertTrue(request.openBody() instanceof BodyEncoder.EncodedBody);
+
+		// the encoding belongs to the attempt, the request itself is left as is
+		assertNull(request.getHeaders().get("content-encoding"));
+	}
+
+	@Test
+	public void test_smallerRetryIsSentAsIs()
+		throws Exception {
+		HttpRequest request = new Transaction_Upload().upload();
+		request.setBodyEncoder(BodyEncoder.GZip, MinLength);
+		request.setRetryPolicy(new RetryPolicy().setBackoff(1, 1, 1));
+		request.setBody(new RequestBody() {
+			@Override
+			public long getContentLength() {
+				return body.length;
+			}
+
+			@Override
+			public void writeTo(OutputStream outputStream)
+				throws IOException {
+				outputStream.write(body);
+			}
+		});
+
+		request.executeAsync(String.class).get(10, TimeUnit.SECONDS);
+
+		assertEquals(2, encodings.size());
+		assertEquals("gzip", encodings.get(0));
+		assertArrayEquals(createData(10 * MinLength), bodies.get(0));
+		assertEquals("null", encodings.get(1));
+		assertArrayEquals(createData(MinLength / 2), bodies.get(1));
+	}
+}
@@ -0,0 +1,134 @@
+package com.nu.art.http;
+
+import com.nu.art.http.BufferPool.PooledOutputStream;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class Test_BufferPool {
+
+	private static byte[] createData(int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) i;
+		}
+
+		return data;
+	}
+
+	@Test
+	public void test_sizeClasses() {
+		BufferPool pool = BufferPool.Instance;
+		assertEquals(BufferPool.MinBufferSize, pool.acquire(1).length);
+		assertEquals(2048, pool.acquire(1025).length);
+		assertEquals(4096, pool.acquire(4096).length);
+		assertEquals(BufferPool.MaxBufferSize, pool.acquire(BufferPool.MaxBufferSize + 1).length);
+		assertEquals(16 * 1024, pool.acquireDirect(10000).capacity());
+	}
+
+	@Test
+	public void test_releasedBufferIsReused() {
+		BufferPool pool = BufferPool.Instance;
+		byte[] buffer = pool.acquire(8 * 1024);
+		long hits = pool.getStatistics().threadLocalHits;
+		pool.release(buffer);
+
+		assertSame(buffer, pool.acquire(5000));
+		assertEquals(hits + 1, pool.getStatistics().threadLocalHits);
+
+		ByteBuffer direct = pool.acquireDirect(3000);
+		direct.putInt(7);
+		pool.releaseDirect(direct);
+		ByteBuffer reused = pool.acquireDirect(4096);
+		assertSame(direct, reused);
+		assertEquals(0, reused.position());
+	}
+
+	@Test
+	public void test_foreignBufferIsIgnored() {
+		BufferPool pool = BufferPool.Instance;
+		byte[] foreign = new byte[3000];
+		pool.release(foreign);
+		assertNotSame(foreign, pool.acquire(3000));
+	}
+
+	@Test
+	public void test_pooledOutputStream()
+		throws IOException {
+		BufferPool pool = BufferPool.Instance;
+		byte[] data = createData(3 * BufferPool.MaxBufferSize + 5);
+		byte[] collected;
+		try (PooledOutputStream outputStream = new PooledOutputStream(pool, 100)) {
+			assertEquals(data.length, pool.copy(new ByteArrayInputStream(data), outputStream));
+			collected = outputStream.toByteArray();
+		}
+
+		assertArrayEquals(data, collected);
+
+		long misses = pool.getStatistics().misses;
+		try (PooledOutputStream outputStream = new PooledOutputStream(pool, 100)) {
+			outputStream.write(data, 0, 50);
+			assertArrayEquals(createData(50), outputStream.toByteArray());
+		}
+
+		// the small buffer released by the first stream once it outgrew it
+		assertEquals(misses, pool.getStatistics().misses);
+	}
+
+	@Test
+	public void test_buffersOutliveTheirThreads()
+		throws InterruptedException {
+		final BufferPool pool = BufferPool.Instance;
+		long misses = pool.getStatistics().misses;
+		for (int i = 0; i < 100; i++) {
+			// a thread per transaction, as of an execution pool with virtual threads
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					pool.release(pool.acquire(2048));
+					pool.releaseThreadCache();
+				}
+			});
+
+			thread.start();
+			thread.join();
+		}
+
+		assertTrue(pool.getStatistics().misses - misses <= 1);
+	}
+
+	@Test
+	public void test_sharedPoolBound() {
+		// a pool of its own, the bound would otherwise apply to every user of the shared instance
+		BufferPool pool = new BufferPool().setMaxPooledBuffers(1);
+		byte[][] buffers = new byte[4][];
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = pool.acquire(32 * 1024);
+		}
+
+		for (byte[] buffer : buffers) {
+			pool.release(buffer);
+		}
+
+		// two kept by the thread, one by the shared pool
+		assertEquals(1, pool.getStatistics().dropped);
+		for (int i = 0; i < buffers.length; i++) {
+			pool.acquire(32 * 1024);
+		}
+
+		BufferPool.Statistics statistics = pool.getStatistics();
+		assertEquals(2, statistics.threadLocalHits);
+		assertEquals(1, statistics.sharedHits);
+		assertEquals(buffers.length + 1, statistics.misses);
+	}
+}
@@ -0,0 +1,61 @@
+package com.nu.art.http;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class Test_FairQueue {
+
+	@Test
+	public void test_weightedShare() {
+		FairQueue<String> queue = new FairQueue<>();
+		for (int i = 0; i < 30; i++) {
+			queue.add("light", "light", 1, FairQueue.NoDeadline);
+		}
+		for (int i = 0; i < 30; i++) {
+			queue.add("heavy", "heavy", 2, FairQueue.NoDeadline);
+		}
+
+		ArrayList<String> expired = new ArrayList<>();
+		int heavy = 0;
+		for (int i = 0; i < 30; i++) {
+			if ("heavy".equals(queue.poll(expired)))
+				heavy++;
+		}
+
+		assertEquals(20, heavy);
+		assertEquals(0, expired.size());
+	}
+
+	@Test
+	public void test_expiredItemsAreDropped() {
+		FairQueue<String> queue = new FairQueue<>();
+		queue.add("expired", "a", 1, System.nanoTime() - 1);
+		queue.add("live", "a", 1, System.nanoTime() + 60000000000L);
+
+		ArrayList<String> expired = new ArrayList<>();
+		assertEquals("live", queue.poll(expired));
+		assertEquals(1, expired.size());
+		assertNull(queue.poll(expired));
+	}
+
+	@Test
+	public void test_removedItemIsNotServed() {
+		FairQueue<String> queue = new FairQueue<>();
+		queue.add("first", "a", 1, FairQueue.NoDeadline);
+		queue.add("second", "a", 1, FairQueue.NoDeadline);
+
+		assertTrue(queue.remove("first"));
+		assertFalse(queue.remove("first"));
+		assertEquals(1, queue.size());
+
+		ArrayList<String> expired = new ArrayList<>();
+		assertEquals("second", queue.poll(expired));
+		assertNull(queue.poll(expired));
+	}
+}
@@ -0,0 +1,232 @@
+package com.nu.art.http;
+
+import com.nu.art.belog.BeLogged;
+import com.nu.art.core.interfaces.Getter;
+import com.nu.art.modular.core.ModuleManagerBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.nu.art.belog.loggers.JavaLogger.Config_FastJavaLogger;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Test_HttpDownload {
+
+	private static final int SegmentSize = 64 * 1024;
+
+	private static final int SegmentCount = 5;
+
+	private final byte[] data = new byte[SegmentCount * SegmentSize - 100];
+
+	/**
+	 * The requested ranges, with the If-Range validator they carried
+	 */
+	private final List<String> ranges = new CopyOnWriteArrayList<>();
+
+	private volatile String etag = "\"v1\"";
+
+	/**
+	 * The etag the file has by the time its segments are requested
+	 */
+	private volatile String currentEtag = "\"v1\"";
+
+	private volatile int failFromRange = Integer.MAX_VALUE;
+
+	private volatile boolean unknownTotalLength;
+
+	/**
+	 * The length the probe reports, when it is not the length of the data
+	 */
+	private volatile long probedLength = -1;
+
+	private HttpServer server;
+
+	private File targetFile;
+
+	class Transaction_Download
+		extends HttpModule.BaseTransaction {
+
+		HttpDownload download() {
+			return new HttpDownload(new Getter<IHttpRequest>() {
+				@Override
+				public IHttpRequest get() {
+					return createRequest();
+				}
+			}, "http://127.0.0.1:" + server.getAddress().getPort() + "/file", targetFile).setSegmentSize(SegmentSize).setParallelism(1);
+		}
+	}
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp()
+		throws IOException {
+		BeLogged.getInstance().setConfig(Config_FastJavaLogger);
+		new ModuleManagerBuilder().addModules(HttpModule.class).build();
+
+		new Random(5).nextBytes(data);
+		targetFile = File.createTempFile("download", ".bin");
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange)
+				throws IOException {
+				serve(exchange);
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+		targetFile.delete();
+		new File(targetFile.getPath() + ".parts").delete();
+	}
+
+	private void serve(HttpExchange exchange)
+		throws IOException {
+		exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+		if (exchange.getRequestMethod().equals("HEAD")) {
+			exchange.getResponseHeaders().add("ETag", etag);
+			exchange.getResponseHeaders().add("Content-Length", String.valueOf(probedLength != -1 ? probedLength : data.length));
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+			return;
+		}
+
+		exchange.getResponseHeaders().add("ETag", currentEtag);
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+		ranges.add(range + " " + ifRange);
+		if (ranges.size() > failFromRange) {
+			exchange.sendResponseHeaders(500, -1);
+			exchange.close();
+			return;
+		}
+
+		int start = 0;
+		int end = data.length - 1;
+		int responseCode = 200;
+		if (range != null && currentEtag.equals(ifRange)) {
+			String[] bounds = range.substring("bytes=".length()).split("-");
+			start = Integer.parseInt(bounds[0]);
+			end = Integer.parseInt(bounds[1]);
+			responseCode = 206;
+			exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + (unknownTotalLength ? "*" : data.length));
+		}
+
+		exchange.sendResponseHeaders(responseCode, end - start + 1);
+		try (OutputStream outputStream = exchange.getResponseBody()) {
+			outputStream.write(data, start, end - start + 1);
+		}
+	}
+
+	private static Throwable awaitFailure(HttpDownload download)
+		throws Exception {
+		try {
+			download.start().get(10, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			return e.getCause();
+		}
+
+		fail("expected the download to fail");
+		return null;
+	}
+
+	@Test
+	public void test_segmentedDownload()
+		throws Exception {
+		new Transaction_Download().download().start().get(10, TimeUnit.SECONDS);
+
+		assertArrayEquals(data, Files.readAllBytes(targetFile.toPath()));
+		assertEquals(SegmentCount, ranges.size());
+		for (int index = 0; index < SegmentCount; index++) {
+			long end = Math.min(data.length, (index + 1) * SegmentSize) - 1;
+			assertTrue(ranges.contains("bytes=" + index * SegmentSize + "-" + end + " " + etag));
+		}
+
+		assertFalse(new File(targetFile.getPath() + ".parts").exists());
+	}
+
+	@Test
+	public void test_resume()
+		throws Exception {
+		HttpDownload download = new Transaction_Download().download().setMaxSegmentAttempts(1);
+		failFromRange = 2;
+		awaitFailure(download);
+		assertTrue(new File(targetFile.getPath() + ".parts").exists());
+
+		// only the segments that did not complete are requested again
+		ranges.clear();
+		failFromRange = Integer.MAX_VALUE;
+		download.start().get(10, TimeUnit.SECONDS);
+
+		assertArrayEquals(data, Files.readAllBytes(targetFile.toPath()));
+		assertEquals(SegmentCount - 2, ranges.size());
+	}
+
+	@Test
+	public void test_changedFileRestarts()
+		throws Exception {
+		HttpDownload download = new Transaction_Download().download().setMaxSegmentAttempts(1);
+		failFromRange = 2;
+		awaitFailure(download);
+
+		ranges.clear();
+		failFromRange = Integer.MAX_VALUE;
+		etag = currentEtag = "\"v2\"";
+		download.start().get(10, TimeUnit.SECONDS);
+
+		assertArrayEquals(data, Files.readAllBytes(targetFile.toPath()));
+		assertEquals(SegmentCount, ranges.size());
+	}
+
+	@Test
+	public void test_ifRangeMismatch()
+		throws Exception {
+		// the file changes between the probe and the segments, the server answers the stale If-Range with the whole file
+		currentEtag = "\"v2\"";
+		Throwable error = awaitFailure(new Transaction_Download().download().setMaxSegmentAttempts(1));
+		assertTrue(String.valueOf(error.getCause()).contains("Expected a partial content response, got: 200"));
+	}
+
+	@Test
+	public void test_contentRangeOfUnknownLength()
+		throws Exception {
+		unknownTotalLength = true;
+		Throwable error = awaitFailure(new Transaction_Download().download().setMaxSegmentAttempts(1));
+		assertTrue(String.valueOf(error.getCause()).contains("Expected content range: bytes 0-" + (SegmentSize - 1) + "/" + data.length));
+	}
+
+	@Test
+	public void test_fileLargerThan2GB()
+		throws Exception {
+		// the server reports a file it cannot serve, the download fails on its first segment rather than on the probe
+		probedLength = 3L * Integer.MAX_VALUE;
+		failFromRange = 0;
+		Throwable error = awaitFailure(new Transaction_Download().download().setMaxSegmentAttempts(1));
+		assertEquals("Segment 0 failed after 1 attempts", error.getMessage());
+
+		assertEquals(probedLength, targetFile.length());
+		assertTrue(Files.readAllLines(new File(targetFile.getPath() + ".parts").toPath()).contains("length=" + probedLength));
+	}
+}
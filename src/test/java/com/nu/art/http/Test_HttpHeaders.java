@@ -0,0 +1,44 @@
+package com.nu.art.http;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class Test_HttpHeaders {
+
+	@Test
+	public void test_caseInsensitiveLookup() {
+		HttpHeaders headers = new HttpHeaders(1);
+		headers.add("Content-Type", "application/json");
+		headers.add("X-Custom", "a");
+		headers.add("x-custom", "b");
+
+		assertEquals("application/json", headers.get("content-type"));
+		assertSame("content-type", headers.getName(0));
+		assertEquals(Arrays.asList("a", "b"), headers.getAll("X-CUSTOM"));
+		assertNull(headers.get("etag"));
+		assertTrue(headers.getAll("etag").isEmpty());
+		assertEquals(3, headers.size());
+	}
+
+	@Test
+	public void test_setAndRemove() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.add("Accept", "text/html");
+		headers.add("Range", "bytes=0-");
+		headers.add("accept", "text/plain");
+		headers.set("ACCEPT", "*/*");
+
+		assertEquals(Arrays.asList("*/*"), headers.getAll("accept"));
+		assertEquals("range", headers.getName(0));
+
+		headers.remove("Range");
+		assertEquals(1, headers.size());
+		assertEquals(1, headers.toMultimap().get("accept").size());
+	}
+}
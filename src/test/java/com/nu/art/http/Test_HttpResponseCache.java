@@ -0,0 +1,302 @@
+package com.nu.art.http;
+
+import com.nu.art.belog.BeLogged;
+import com.nu.art.modular.core.ModuleManagerBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static com.nu.art.belog.loggers.JavaLogger.Config_FastJavaLogger;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class Test_HttpResponseCache {
+
+	private static final int MaxEntrySize = 1000;
+
+	private static final String LastModified = "Tue, 01 Sep 2026 10:00:00 GMT";
+
+	/**
+	 * The path and the validators of every request the server received
+	 */
+	private final List<String> requests = new CopyOnWriteArrayList<>();
+
+	private HttpServer server;
+
+	private HttpResponseCache cache;
+
+	class Transaction_Cache
+		extends HttpModule.BaseTransaction {
+
+		HttpModule module() {
+			return getModule(HttpModule.class);
+		}
+
+		HttpRequest request(String path) {
+			return (HttpRequest) createRequest().setUrl("http://127.0.0.1:" + server.getAddress().getPort() + path);
+		}
+
+		String get(String path)
+			throws Exception {
+			return request(path).executeAsync(String.class).get(10, TimeUnit.SECONDS);
+		}
+	}
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp()
+		throws IOException {
+		BeLogged.getInstance().setConfig(Config_FastJavaLogger);
+		new ModuleManagerBuilder().addModules(HttpModule.class).build();
+
+		cache = new HttpResponseCache(new MemoryCacheStore(1024 * 1024)).setMaxEntrySize(MaxEntrySize);
+		new Transaction_Cache().module().setResponseCache(cache);
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange)
+				throws IOException {
+				serve(exchange);
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	private void serve(HttpExchange exchange)
+		throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+		String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+		requests.add(path + " " + ifNoneMatch + " " + ifModifiedSince);
+
+		byte[] body = ("v" + requests.size()).getBytes("UTF-8");
+		int contentLength = body.length;
+		switch (path) {
+			case "/fresh":
+				exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+				break;
+
+			case "/etag":
+				exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+				exchange.getResponseHeaders().add("ETag", "\"e1\"");
+				if ("\"e1\"".equals(ifNoneMatch)) {
+					exchange.sendResponseHeaders(304, -1);
+					exchange.close();
+					return;
+				}
+				break;
+
+			case "/last-modified":
+				exchange.getResponseHeaders().add("Cache-Control", "max-age=0");
+				exchange.getResponseHeaders().add("Last-Modified", LastModified);
+				if (LastModified.equals(ifModifiedSince)) {
+					exchange.sendResponseHeaders(304, -1);
+					exchange.close();
+					return;
+				}
+				break;
+
+			case "/no-store":
+				exchange.getResponseHeaders().add("Cache-Control", "no-store, max-age=60");
+				break;
+
+			case "/vary":
+				exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+				exchange.getResponseHeaders().add("Vary", "*");
+				break;
+
+			case "/large":
+				exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+				body = Arrays.copyOf(body, MaxEntrySize + 1);
+				// chunked, the size is only known once the body was read
+				contentLength = 0;
+				break;
+		}
+
+		exchange.sendResponseHeaders(200, contentLength);
+		try (OutputStream outputStream = exchange.getResponseBody()) {
+			outputStream.write(body);
+		}
+	}
+
+	private static String formatDate(long time) {
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format.format(new Date(time));
+	}
+
+	/**
+	 * @param age     The time in ms since the response was received
+	 * @param headers Pairs of header names and values
+	 */
+	private static CachedResponse cached(String url, long age, byte[] body, String... headers) {
+		HashMap<String, List<String>> headerMap = new HashMap<>();
+		for (int i = 0; i < headers.length; i += 2) {
+			headerMap.put(headers[i], Collections.singletonList(headers[i + 1]));
+		}
+
+		long responseTime = System.currentTimeMillis() - age;
+		return new CachedResponse(url, 200, headerMap, new HashMap<String, String>(), body, responseTime, responseTime);
+	}
+
+	private boolean isFresh(long age, String... headers) {
+		return cache.isFresh(new Transaction_Cache().request("/"), cached("url", age, new byte[0], headers));
+	}
+
+	@Test
+	public void test_freshHit()
+		throws Exception {
+		Transaction_Cache transaction = new Transaction_Cache();
+		assertEquals("v1", transaction.get("/fresh"));
+		assertEquals("v1", transaction.get("/fresh"));
+		assertEquals(1, requests.size());
+	}
+
+	@Test
+	public void test_revalidateETag()
+		throws Exception {
+		Transaction_Cache transaction = new Transaction_Cache();
+		assertEquals("v1", transaction.get("/etag"));
+		// served from the cache once the server answered the conditional request with a 304
+		assertEquals("v1", transaction.get("/etag"));
+
+		assertEquals(Arrays.asList("/etag null null", "/etag \"e1\" null"), requests);
+	}
+
+	@Test
+	public void test_revalidateLastModified()
+		throws Exception {
+		Transaction_Cache transaction = new Transaction_Cache();
+		assertEquals("v1", transaction.get("/last-modified"));
+		assertEquals("v1", transaction.get("/last-modified"));
+
+		assertEquals(Arrays.asList("/last-modified null null", "/last-modified null " + LastModified), requests);
+	}
+
+	@Test
+	public void test_uncacheableResponses()
+		throws Exception {
+		Transaction_Cache transaction = new Transaction_Cache();
+		assertEquals("v1", transaction.get("/no-store"));
+		assertEquals("v2", transaction.get("/no-store"));
+
+		assertEquals("v3", transaction.get("/vary"));
+		assertEquals("v4", transaction.get("/vary"));
+
+		// beyond the max entry size, which a chunked response only turns out to be once it was recorded
+		assertTrue(transaction.get("/large").startsWith("v5"));
+		assertTrue(transaction.get("/large").startsWith("v6"));
+	}
+
+	@Test
+	public void test_freshness() {
+		assertTrue(isFresh(30000, "cache-control", "max-age=60"));
+		assertFalse(isFresh(90000, "cache-control", "max-age=60"));
+		// the age the response already had when it was received counts as well
+		assertFalse(isFresh(30000, "cache-control", "max-age=60", "age", "45"));
+		assertFalse(isFresh(0, "cache-control", "max-age=60, no-cache"));
+
+		long date = System.currentTimeMillis() - 30000;
+		assertTrue(isFresh(30000, "date", formatDate(date), "expires", formatDate(date + 60000)));
+		assertFalse(isFresh(30000, "date", formatDate(date), "expires", formatDate(date + 10000)));
+
+		// a tenth of the time since the last modification
+		assertTrue(isFresh(30000, "date", formatDate(date), "last-modified", formatDate(date - 1000000)));
+		assertFalse(isFresh(30000, "date", formatDate(date), "last-modified", formatDate(date - 100000)));
+
+		assertFalse(isFresh(0));
+
+		HttpRequest request = new Transaction_Cache().request("/");
+		request.addHeader("cache-control", "max-age=10");
+		assertFalse(cache.isFresh(request, cached("url", 30000, new byte[0], "cache-control", "max-age=60")));
+	}
+
+	@Test
+	public void test_memoryStoreEviction() {
+		MemoryCacheStore store = new MemoryCacheStore(250);
+		CachedResponse a = cached("a", 0, new byte[100]);
+		CachedResponse b = cached("b", 0, new byte[100]);
+		CachedResponse c = cached("c", 0, new byte[100]);
+
+		store.put("a", a);
+		store.put("b", b);
+		store.get("a");
+		store.put("c", c);
+
+		// the least recently used entry is evicted
+		assertNull(store.get("b"));
+		assertEquals(a, store.get("a"));
+		assertEquals(c, store.get("c"));
+		assertEquals(a.size() + c.size(), store.getSize());
+
+		store.put("d", cached("d", 0, new byte[300]));
+		assertNull(store.get("d"));
+		assertEquals(a.size() + c.size(), store.getSize());
+	}
+
+	@Test
+	public void test_diskStoreRoundTrip()
+		throws IOException {
+		File directory = Files.createTempDirectory("cache").toFile();
+		try {
+			HashMap<String, List<String>> headers = new HashMap<>();
+			headers.put("etag", Collections.singletonList("\"e1\""));
+			headers.put("set-cookie", Arrays.asList("a=1", "b=2"));
+			HashMap<String, String> varyHeaders = new HashMap<>();
+			varyHeaders.put("accept", "application/json");
+			varyHeaders.put("accept-language", null);
+			CachedResponse response = new CachedResponse("http://host/path", 203, headers, varyHeaders, "body".getBytes("UTF-8"), 1000, 2000);
+
+			new DiskCacheStore(directory, 1024 * 1024).put(response.url, response);
+
+			// read by another store, as after a restart
+			DiskCacheStore store = new DiskCacheStore(directory, 1024 * 1024);
+			CachedResponse read = store.get(response.url);
+			assertEquals(response.url, read.url);
+			assertEquals(response.responseCode, read.responseCode);
+			assertEquals(response.headers, read.headers);
+			assertEquals(response.varyHeaders, read.varyHeaders);
+			assertArrayEquals(response.body, read.body);
+			assertEquals(response.requestTime, read.requestTime);
+			assertEquals(response.responseTime, read.responseTime);
+
+			assertNull(store.get("http://host/other"));
+			store.remove(response.url);
+			assertNull(store.get(response.url));
+		} finally {
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+}
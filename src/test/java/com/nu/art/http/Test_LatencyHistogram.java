@@ -0,0 +1,37 @@
+package com.nu.art.http;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Test_LatencyHistogram {
+
+	@Test
+	public void test_bucketsCoverTheirValues() {
+		long[] values = {0, 1, 63, 64, 65, 127, 128, 1000, 123456789L, Long.MAX_VALUE / 2};
+		for (long value : values) {
+			long highest = LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(value));
+			assertTrue("bucket of " + value + " ends at " + highest, highest >= value);
+			assertTrue("bucket of " + value + " is too wide: " + highest, highest - value <= Math.max(1, value / 16));
+		}
+	}
+
+	@Test
+	public void test_percentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 10000; i++) {
+			histogram.record(i * 1000L);
+		}
+
+		assertEquals(10000, histogram.getCount());
+		assertEquals(10000000, histogram.getMax());
+		assertWithin(5000000, histogram.getValueAtPercentile(50));
+		assertWithin(9900000, histogram.getValueAtPercentile(99));
+		assertEquals(10000000, histogram.getValueAtPercentile(100));
+	}
+
+	private static void assertWithin(long expected, long actual) {
+		assertTrue("expected ~" + expected + " but was " + actual, Math.abs(expected - actual) <= expected * 0.04);
+	}
+}
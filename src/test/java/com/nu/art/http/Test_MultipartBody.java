@@ -0,0 +1,99 @@
+package com.nu.art.http;
+
+import com.nu.art.belog.BeLogged;
+import com.nu.art.core.interfaces.Getter;
+import com.nu.art.http.MultipartBody.Multipart;
+import com.nu.art.modular.core.ModuleManagerBuilder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import static com.nu.art.belog.loggers.JavaLogger.Config_FastJavaLogger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Test_MultipartBody {
+
+	class Transaction_Upload
+		extends HttpModule.BaseTransaction {
+
+		RequestBody multipart(Multipart... parts)
+			throws IOException {
+			HttpRequest request = (HttpRequest) createRequest().setUrl("http://127.0.0.1/upload");
+			new MultipartBody().setMultipart(request, parts);
+			return request.openBody();
+		}
+	}
+
+	private static Getter<InputStream> stream(final byte[] bytes) {
+		return new Getter<InputStream>() {
+			@Override
+			public InputStream get() {
+				return new ByteArrayInputStream(bytes);
+			}
+		};
+	}
+
+	private static String write(RequestBody body)
+		throws IOException {
+		ByteArrayOutputStream written = new ByteArrayOutputStream();
+		body.writeTo(written);
+		return written.toString("UTF-8");
+	}
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		BeLogged.getInstance().setConfig(Config_FastJavaLogger);
+		new ModuleManagerBuilder().addModules(HttpModule.class).build();
+	}
+
+	@Test
+	public void test_contentLengthMatchesBody()
+		throws IOException {
+		File file = File.createTempFile("part", ".txt");
+		try {
+			Files.write(file.toPath(), "file-content".getBytes("UTF-8"));
+			RequestBody body = new Transaction_Upload().multipart(new Multipart("string", false, "string-content"),
+			                                                      new Multipart("bytes", true, RequestBody.of(new byte[]{1, 2, 3})),
+			                                                      new Multipart("file", file),
+			                                                      new Multipart("stream", true, stream("stream-content".getBytes("UTF-8")), 14));
+
+			ByteArrayOutputStream written = new ByteArrayOutputStream();
+			body.writeTo(written);
+			assertEquals(written.size(), body.getContentLength());
+
+			// every attempt writes the same body
+			ByteArrayOutputStream rewritten = new ByteArrayOutputStream();
+			body.writeTo(rewritten);
+			assertEquals(written.toString("UTF-8"), rewritten.toString("UTF-8"));
+
+			String content = written.toString("UTF-8");
+			assertTrue(content.contains("name=\"string\"\r\n\r\nstring-content\r\n"));
+			assertTrue(content.contains("name=\"file\"; filename=\"file\"\r\n\r\nfile-content\r\n"));
+			assertTrue(content.contains("name=\"stream\"; filename=\"stream\"\r\n\r\nstream-content\r\n"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void test_undeclaredLengthIsSentChunked()
+		throws IOException {
+		RequestBody body = new Transaction_Upload().multipart(new Multipart("string", false, "string-content"),
+		                                                      new Multipart("stream", true, stream("stream-content".getBytes("UTF-8"))));
+
+		assertEquals(-1, body.getContentLength());
+		String content = write(body);
+		assertTrue(content.contains("name=\"string\"\r\n\r\nstring-content\r\n"));
+		assertTrue(content.contains("name=\"stream\"; filename=\"stream\"\r\n\r\nstream-content\r\n"));
+		assertTrue(content.endsWith("--\r\n"));
+	}
+}
@@ -0,0 +1,98 @@
+package com.nu.art.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class Test_RequestBody {
+
+	private static byte[] createData(int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) i;
+		}
+
+		return data;
+	}
+
+	private static byte[] write(RequestBody body)
+		throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		body.writeTo(outputStream);
+		return outputStream.toByteArray();
+	}
+
+	@Test
+	public void test_fileBody()
+		throws IOException {
+		byte[] data = createData(3 * RequestBody.BufferSize + 17);
+		File file = File.createTempFile("request-body", ".bin");
+		try {
+			Files.write(file.toPath(), data);
+			RequestBody body = RequestBody.of(file);
+
+			assertEquals(data.length, body.getContentLength());
+			assertArrayEquals(data, write(body));
+			// the body is written again on a retry
+			assertArrayEquals(data, write(body));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void test_channelRegion()
+		throws IOException {
+		byte[] data = createData(RequestBody.BufferSize * 2);
+		File file = File.createTempFile("request-body", ".bin");
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(data));
+			channel.position(0);
+
+			RequestBody body = RequestBody.of(channel, 100, RequestBody.BufferSize);
+			assertEquals(RequestBody.BufferSize, body.getContentLength());
+			assertArrayEquals(Arrays.copyOfRange(data, 100, 100 + RequestBody.BufferSize), write(body));
+			assertEquals(0, channel.position());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void test_byteBufferBodies()
+		throws IOException {
+		byte[] data = createData(RequestBody.BufferSize + 5);
+		ByteBuffer heap = ByteBuffer.wrap(data);
+		heap.position(5);
+		assertArrayEquals(Arrays.copyOfRange(data, 5, data.length), write(RequestBody.of(heap)));
+		assertEquals(5, heap.position());
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+		direct.put(data).flip();
+		RequestBody body = RequestBody.of(direct);
+		assertEquals(data.length, body.getContentLength());
+		assertArrayEquals(data, write(body));
+		assertArrayEquals(data, write(body));
+	}
+
+	@Test
+	public void test_streamOfUnknownLength()
+		throws IOException {
+		// available() only counts what is readable without blocking, so a stream is sent chunked
+		byte[] data = createData(RequestBody.BufferSize + 3);
+		RequestBody body = RequestBody.of(new ByteArrayInputStream(data));
+		assertEquals(-1, body.getContentLength());
+		assertArrayEquals(data, write(body));
+	}
+}
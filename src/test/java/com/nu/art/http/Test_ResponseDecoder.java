@@ -0,0 +1,142 @@
+package com.nu.art.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class Test_ResponseDecoder {
+
+	private static byte[] createData(int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) (i % 61);
+		}
+
+		return data;
+	}
+
+	private static byte[] encode(byte[] data, boolean gzip, boolean nowrap)
+		throws IOException {
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		try (OutputStream outputStream = gzip ? new GZIPOutputStream(encoded) : new DeflaterOutputStream(encoded, new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap))) {
+			outputStream.write(data);
+		}
+
+		return encoded.toByteArray();
+	}
+
+	private static byte[] decode(String contentEncoding, byte[] encoded)
+		throws IOException {
+		HashMap<String, ResponseDecoder> decoders = new HashMap<>();
+		decoders.put(ResponseDecoder.GZip.getName(), ResponseDecoder.GZip);
+		decoders.put(ResponseDecoder.Deflate.getName(), ResponseDecoder.Deflate);
+
+		ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+		try (InputStream inputStream = ResponseDecoder.decode(decoders, contentEncoding, new ByteArrayInputStream(encoded))) {
+			byte[] buffer = new byte[1000];
+			for (int length; (length = inputStream.read(buffer)) != -1; ) {
+				decoded.write(buffer, 0, length);
+			}
+		}
+
+		return decoded.toByteArray();
+	}
+
+	@Test
+	public void test_gzip()
+		throws IOException {
+		byte[] data = createData(5 * ResponseDecoder.BufferSize + 3);
+		// also reuses the pooled inflater of the previous response
+		assertArrayEquals(data, decode("gzip", encode(data, true, false)));
+		assertArrayEquals(data, decode("GZip", encode(data, true, false)));
+	}
+
+	@Test
+	public void test_gzipOptionalFields()
+		throws IOException {
+		byte[] encoded = encode(createData(100), true, false);
+		ByteArrayOutputStream withFields = new ByteArrayOutputStream();
+		withFields.write(encoded, 0, 3);
+		// flags: extra field and file name
+		withFields.write(4 | 8);
+		withFields.write(encoded, 4, 6);
+		withFields.write(new byte[]{2, 0, 'x', 'y'});
+		withFields.write(new byte[]{'a', '.', 'j', 's', 0});
+		withFields.write(encoded, 10, encoded.length - 10);
+
+		assertArrayEquals(createData(100), decode("gzip", withFields.toByteArray()));
+	}
+
+	@Test
+	public void test_gzipMembers()
+		throws IOException {
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		encoded.write(encode("hello ".getBytes(), true, false));
+		encoded.write(encode("world".getBytes(), true, false));
+		assertEquals("hello world", new String(decode("gzip", encoded.toByteArray())));
+
+		// an incompressible member spanning several input buffers, followed by a small one
+		byte[] data = new byte[3 * ResponseDecoder.BufferSize + 11];
+		new Random(7).nextBytes(data);
+		encoded.reset();
+		encoded.write(encode(data, true, false));
+		encoded.write(encode("!".getBytes(), true, false));
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(data);
+		expected.write('!');
+		assertArrayEquals(expected.toByteArray(), decode("gzip", encoded.toByteArray()));
+	}
+
+	@Test
+	public void test_deflate()
+		throws IOException {
+		byte[] data = createData(3 * ResponseDecoder.BufferSize);
+		assertArrayEquals(data, decode("deflate", encode(data, false, false)));
+		// raw deflate, as sent by some servers
+		assertArrayEquals(data, decode("deflate", encode(data, false, true)));
+	}
+
+	@Test
+	public void test_chainedAndUnknownEncodings()
+		throws IOException {
+		byte[] data = createData(1000);
+		assertArrayEquals(data, decode("deflate, gzip", encode(encode(data, false, false), true, false)));
+		assertArrayEquals(data, decode("identity", data));
+
+		byte[] unknown = encode(data, true, false);
+		assertArrayEquals(unknown, decode("gzip, br", unknown));
+	}
+
+	@Test
+	public void test_emptyBody()
+		throws IOException {
+		assertEquals(0, decode("gzip", new byte[0]).length);
+		assertEquals(0, decode("deflate", new byte[0]).length);
+	}
+
+	@Test
+	public void test_corruptTrailer()
+		throws IOException {
+		byte[] encoded = encode(createData(1000), true, false);
+		encoded[encoded.length - 5]++;
+		try {
+			decode("gzip", encoded);
+			fail("expected a checksum mismatch");
+		} catch (ZipException expected) {
+		}
+	}
+}
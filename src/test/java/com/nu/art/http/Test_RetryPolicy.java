@@ -0,0 +1,54 @@
+package com.nu.art.http;
+
+import com.nu.art.http.consts.HttpMethod;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Test_RetryPolicy {
+
+	@Test
+	public void test_retryableFailures() {
+		RetryPolicy policy = new RetryPolicy();
+		assertTrue(policy.isRetryable(new SocketTimeoutException()));
+		assertTrue(policy.isRetryable(new HttpException(response(503), "unavailable")));
+		assertFalse(policy.isRetryable(new HttpException(response(404), "not found")));
+		assertFalse(policy.isRetryable(new HttpDeadlineExceededException("late")));
+		assertFalse(policy.isRetryable(new IllegalStateException()));
+
+		assertTrue(policy.isRetryable(HttpMethod.Put));
+		assertFalse(policy.isRetryable(HttpMethod.Post));
+		assertTrue(policy.setRetryNonIdempotent(true).isRetryable(HttpMethod.Post));
+
+		policy.setRetryableExceptions(SocketTimeoutException.class);
+		assertFalse(policy.isRetryable(new IOException()));
+		assertTrue(policy.isRetryable(new SocketTimeoutException()));
+	}
+
+	@Test
+	public void test_backoffIsBounded() {
+		RetryPolicy policy = new RetryPolicy().setBackoff(100, 1000, 2);
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(policy.getBackoff(1, -1) < 100);
+			assertTrue(policy.getBackoff(3, -1) < 400);
+			assertTrue(policy.getBackoff(10, -1) <= 1000);
+		}
+
+		assertEquals(500, policy.getBackoff(1, 500));
+		assertEquals(1000, policy.getBackoff(1, 1000));
+		// the server asked for more than the policy is willing to wait
+		assertEquals(-1, policy.getBackoff(1, 5000));
+	}
+
+	private static HttpResponse response(int responseCode) {
+		HttpResponse response = new HttpResponse();
+		response.responseCode = responseCode;
+		return response;
+	}
+}